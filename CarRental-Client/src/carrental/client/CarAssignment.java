@@ -5,6 +5,7 @@
 package carrental.client;
 
 import javax.swing.JOptionPane;
+import java.math.BigDecimal;
 import java.time.*;
 import java.time.temporal.ChronoUnit;
 
@@ -28,11 +29,23 @@ public class CarAssignment extends javax.swing.JFrame {
         setSize(800, 600);
         setTitle("Car Rental Form - Car_Rental_System");
         setLocationRelativeTo(null);
-        loadCustomers();
-        loadCars();
-        loadEmployees();
+        // Fetch all four lists in one round trip; the server answers them concurrently
+        String[] lists = ServerConnection.getInstance().sendPipelined(
+                "LIST|Customers|", "LIST|Cars|", "LIST|Employees|", "LIST|Rentals|");
+        loadCustomers(lists[0]);
+        loadCars(lists[1]);
+        loadEmployees(lists[2]);
         calculateAmount();
-        loadRentalId();
+        loadRentalId(lists[3]);
+    }
+
+    /**
+     * Reloads the car and rental combo boxes after a rental was changed.
+     */
+    private void refreshCarsAndRentals() {
+        String[] lists = ServerConnection.getInstance().sendPipelined("LIST|Cars|", "LIST|Rentals|");
+        loadCars(lists[0]);
+        loadRentalId(lists[1]);
     }
 
     /**
@@ -51,16 +64,14 @@ public class CarAssignment extends javax.swing.JFrame {
 
     /**
      * Loads all customers from the server into the customer selection combo box.
+     * 
+     * @param response the server's response to LIST|Customers|
      */
-    private void loadCustomers() {
+    private void loadCustomers(String response) {
         try {
             CustomerComboBox.removeAllItems();
             CustomerComboBox.addItem("Select Customer");
 
-            // Send LIST request to server
-            String request = "LIST|Customers|";
-            String response = ServerConnection.getInstance().sendRequest(request);
-
             // Parse response
             String[] parts = response.split("\\|", 2);
             if (parts[0].equals("SUCCESS") && parts.length > 1) {
@@ -80,16 +91,14 @@ public class CarAssignment extends javax.swing.JFrame {
 
     /**
      * Loads all rental records from the server into the rental selection combo box.
+     * 
+     * @param response the server's response to LIST|Rentals|
      */
-    private void loadRentalId() {
+    private void loadRentalId(String response) {
         try {
             CmbBoxRentalId.removeAllItems();
             CmbBoxRentalId.addItem("Select Rental");
 
-            // Send LIST request to server for rentals
-            String request = "LIST|Rentals|";
-            String response = ServerConnection.getInstance().sendRequest(request);
-
             // Parse response
             String[] parts = response.split("\\|", 2);
             if (parts[0].equals("SUCCESS") && parts.length > 1) {
@@ -110,16 +119,14 @@ public class CarAssignment extends javax.swing.JFrame {
 
     /**
      * Loads all cars from the server into the car selection combo box.
+     * 
+     * @param response the server's response to LIST|Cars|
      */
-    private void loadCars() {
+    private void loadCars(String response) {
         try {
             CarComboBox.removeAllItems();
             CarComboBox.addItem("Select Car");
 
-            // Send LIST request to server for available cars
-            String request = "LIST|Cars|";
-            String response = ServerConnection.getInstance().sendRequest(request);
-
             // Parse response
             String[] parts = response.split("\\|", 2);
             if (parts[0].equals("SUCCESS") && parts.length > 1) {
@@ -141,16 +148,14 @@ public class CarAssignment extends javax.swing.JFrame {
 
     /**
      * Loads all employees from the server into the employee selection combo box.
+     * 
+     * @param response the server's response to LIST|Employees|
      */
-    private void loadEmployees() {
+    private void loadEmployees(String response) {
         try {
             EmployeeComboBox.removeAllItems();
             EmployeeComboBox.addItem("Select Employee");
 
-            // Send LIST request to server
-            String request = "LIST|Employees|";
-            String response = ServerConnection.getInstance().sendRequest(request);
-
             // Parse response
             String[] parts = response.split("\\|", 2);
             if (parts[0].equals("SUCCESS") && parts.length > 1) {
@@ -168,6 +173,17 @@ public class CarAssignment extends javax.swing.JFrame {
         }
     }
 
+    /**
+     * Builds the BATCH item that changes only the status of a car.
+     * 
+     * @param carId the car to update
+     * @param status the new status, e.g. "Available"
+     * @return the request string
+     */
+    private String carStatusUpdate(int carId, String status) {
+        return "MARK|Cars|" + carId + "," + status;
+    }
+
     /**
      * Calculates the total rental amount based on selected car's daily rate and rental duration.
      * Updates the amount text field with the calculated value.
@@ -179,14 +195,11 @@ public class CarAssignment extends javax.swing.JFrame {
                 String carSelection = CarComboBox.getSelectedItem().toString();
                 int carId = Integer.parseInt(carSelection.split(" - ")[0]);
 
-                // Get rental rate using FIND request
-                String request = "FIND|Cars|" + carId;
-                String response = ServerConnection.getInstance().sendRequest(request);
-
-                String[] parts = response.split("\\|", 2);
-                if (parts[0].equals("SUCCESS")) {
-                    String[] fields = parts[1].split(",");
-                    double dailyRate = Double.parseDouble(fields[4]); // rental_rate is at index 4
+                // Get rental rate of the car
+                TypedRecord car = ServerConnection.getInstance().findRecord("Cars", carId);
+                BigDecimal rate = car.getDecimal("rental_rate");
+                if (rate != null) {
+                    double dailyRate = rate.doubleValue();
 
                     // Calculate days
                     LocalDate startDate = dateStartDate.getDate().toInstant().atZone(java.time.ZoneId.systemDefault()).toLocalDate();
@@ -461,31 +474,18 @@ public class CarAssignment extends javax.swing.JFrame {
             java.sql.Date endDate = new java.sql.Date(dateEndDate.getDate().getTime());
             double amount = Double.parseDouble(txtAmount.getText());
 
-            // Prepare data: customer_id,car_id,employee_id,start_date,end_date,total_amount,status
-            String data = customerId + ","
-                    + carId + ","
-                    + employeeId + ","
-                    + startDate.toString() + ","
-                    + endDate.toString() + ","
-                    + amount + ","
-                    + "Active";
-
-            // Send ADD request to server
-            String request = "ADD|Rentals|" + data;
-            String response = ServerConnection.getInstance().sendRequest(request);
+            // The server checks that the car is still available, adds the rental
+            // and marks the car as rented in one transaction
+            String response = ServerConnection.getInstance().sendFields("RENT", "Rentals",
+                    String.valueOf(customerId), String.valueOf(carId), String.valueOf(employeeId),
+                    startDate.toString(), endDate.toString(), String.valueOf(amount));
 
             // Parse response
             String[] parts = response.split("\\|", 2);
             if (parts[0].equals("SUCCESS")) {
-                // Update car status to 'Rented'
-                String carData = carId + ",,,,Rented,,"; // Only updating status
-                String updateRequest = "UPDATE|Cars|" + carData;
-                ServerConnection.getInstance().sendRequest(updateRequest);
-
                 JOptionPane.showMessageDialog(this, "Car rented successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
                 clearFields();
-                loadCars(); // Refresh available cars
-                loadRentalId(); // Refresh rentals list
+                refreshCarsAndRentals();
             } else {
                 JOptionPane.showMessageDialog(this, "Error renting car: "
                         + (parts.length > 1 ? parts[1] : "Server error"),
@@ -611,8 +611,7 @@ public class CarAssignment extends javax.swing.JFrame {
             if (parts[0].equals("SUCCESS")) {
                 JOptionPane.showMessageDialog(this, "Rental updated successfully!");
                 clearFields();
-                loadCars();
-                loadRentalId();
+                refreshCarsAndRentals();
             } else {
                 JOptionPane.showMessageDialog(this, "Error: "
                         + (parts.length > 1 ? parts[1] : "Server error"));
@@ -652,24 +651,19 @@ public class CarAssignment extends javax.swing.JFrame {
                 return;
             }
 
-            // Send DELETE request to server
+            // Delete the rental and set the car back to available in one transaction
             String request = "DELETE|Rentals|" + rentalId;
-            String response = ServerConnection.getInstance().sendRequest(request);
+            String carUpdate = carId != -1 ? carStatusUpdate(carId, "Available") : null;
+            String response = carUpdate != null
+                    ? ServerConnection.getInstance().sendBatch(request, carUpdate)
+                    : ServerConnection.getInstance().sendRequest(request);
 
             // Parse response
             String[] parts = response.split("\\|", 2);
             if (parts[0].equals("SUCCESS")) {
-                // Update car back to available
-                if (carId != -1) {
-                    String carData = carId + ",,,,Available,,"; // Only updating status
-                    String updateRequest = "UPDATE|Cars|" + carData;
-                    ServerConnection.getInstance().sendRequest(updateRequest);
-                }
-
                 JOptionPane.showMessageDialog(this, "Rental deleted successfully!");
                 clearFields();
-                loadCars();
-                loadRentalId();
+                refreshCarsAndRentals();
             } else {
                 JOptionPane.showMessageDialog(this, "Error: "
                         + (parts.length > 1 ? parts[1] : "Server error"));
@@ -50,13 +50,8 @@ public class CustomerManagement extends javax.swing.JFrame {
             CustomerCmbBox.removeAllItems();
             CustomerCmbBox.addItem("-- Select Customer ID --");
 
-            String response = ServerConnection.getInstance().sendRequest("LIST|Customers");
-            if (response.startsWith("SUCCESS|")) {
-                String[] customers = response.substring(8).split(";");
-                for (String customer : customers) {
-                    CustomerCmbBox.addItem(customer);
-                }
-            }
+            // Read the customers page by page; the table can grow very large
+            ServerConnection.getInstance().listPages("Customers", CustomerCmbBox::addItem);
         } catch (Exception e) {
             JOptionPane.showMessageDialog(this, "Error loading customer IDs: " + e.getMessage());
         }
@@ -362,16 +362,15 @@ public class DamagesMgt extends javax.swing.JFrame {
             // Send empty string for NULL repair cost
             String repairCost = txtRepairCost.getText().trim();
 
-            // Data format: rental_id|car_id|description|repair_cost|reported_date|status
-            // Using PIPE delimiter to avoid conflicts with commas in description
-            String damageData = rentalId + "|"
-                    + carId + "|"
-                    + txtDescription.getText().replace("|", "¦") + "|" // Replace any pipes in description
-                    + repairCost + "|"
-                    + reportedDate + "|"
-                    + cmbStatus.getSelectedItem().toString();
-
-            String response = ServerConnection.getInstance().sendRequest("ADD|Damages|" + damageData);
+            // Fields: rental_id, car_id, description, repair_cost, reported_date, status
+            // sendFields keeps pipes and commas in the description intact
+            String response = ServerConnection.getInstance().sendFields("ADD", "Damages",
+                    String.valueOf(rentalId),
+                    String.valueOf(carId),
+                    txtDescription.getText(),
+                    repairCost,
+                    reportedDate,
+                    cmbStatus.getSelectedItem().toString());
             String[] parts = response.split("\\|", 2);
 
             if (parts[0].equals("SUCCESS")) {
@@ -493,17 +492,16 @@ public class DamagesMgt extends javax.swing.JFrame {
             String reportedDate = new SimpleDateFormat("yyyy-MM-dd").format(dateReported.getDate());
             String repairCost = txtRepairCost.getText().trim();
 
-            // Data format: damage_id|rental_id|car_id|description|repair_cost|reported_date|status
-            // Using PIPE delimiter (changed from comma)
-            String damageData = damageId + "|"
-                    + rentalId + "|"
-                    + carId + "|"
-                    + txtDescription.getText().replace("|", "¦") + "|" // Replace any pipes in description
-                    + repairCost + "|"
-                    + reportedDate + "|"
-                    + cmbStatus.getSelectedItem().toString();
-
-            String response = ServerConnection.getInstance().sendRequest("UPDATE|Damages|" + damageData);
+            // Fields: damage_id, rental_id, car_id, description, repair_cost, reported_date, status
+            // sendFields keeps pipes and commas in the description intact
+            String response = ServerConnection.getInstance().sendFields("UPDATE", "Damages",
+                    String.valueOf(damageId),
+                    String.valueOf(rentalId),
+                    String.valueOf(carId),
+                    txtDescription.getText(),
+                    repairCost,
+                    reportedDate,
+                    cmbStatus.getSelectedItem().toString());
             String[] parts = response.split("\\|", 2);
 
             if (parts[0].equals("SUCCESS")) {
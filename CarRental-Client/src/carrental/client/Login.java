@@ -144,44 +144,14 @@ public class Login extends javax.swing.JFrame {
         }
         
         try {
-            // We need to check if employee exists with this email and password
-            // Since we don't have a direct login method, we'll list all employees and check manually
-            String request = "LIST|Employees|";
-            String response = ServerConnection.getInstance().sendRequest(request);
+            // One AUTH round trip: the server looks the email up and checks the password hash
+            String response = ServerConnection.getInstance().authenticate(email, password);
             
             String[] parts = response.split("\\|", 2);
-            if (parts[0].equals("SUCCESS") && parts.length > 1) {
-                String[] employees = parts[1].split(";");
-                boolean found = false;
-                
-                // Check each employee by finding their details and comparing
-                for (String employee : employees) {
-                    int employeeId = Integer.parseInt(employee.split(" - ")[0]);
-                    
-                    // Get employee details to check email and password
-                    String findRequest = "FIND|Employees|" + employeeId;
-                    String findResponse = ServerConnection.getInstance().sendRequest(findRequest);
-                    
-                    String[] findParts = findResponse.split("\\|", 2);
-                    if (findParts[0].equals("SUCCESS")) {
-                        String[] fields = findParts[1].split(",");
-                        String empEmail = fields[2]; // email is at index 2
-                        String empPassword = fields[5]; // password_hash is at index 5
-                        
-                        if (empEmail.equals(email) && empPassword.equals(password)) {
-                            found = true;
-                            break;
-                        }
-                    }
-                }
-                
-                if (found) {
-                    JOptionPane.showMessageDialog(this, "You are logged in! Welcome");
-                    new Dashboard().setVisible(true);
-                    this.dispose();
-                } else {
-                    JOptionPane.showMessageDialog(this, "Invalid email or password!");
-                }
+            if (parts[0].equals("SUCCESS")) {
+                JOptionPane.showMessageDialog(this, "You are logged in! Welcome");
+                new Dashboard().setVisible(true);
+                this.dispose();
             } else {
                 JOptionPane.showMessageDialog(this, "Error: " + 
                     (parts.length > 1 ? parts[1] : "Server error"));
@@ -5,6 +5,7 @@
 package carrental.client;
 
 import javax.swing.JOptionPane;
+import java.math.BigDecimal;
 import java.text.SimpleDateFormat;
 
 /**
@@ -25,13 +26,8 @@ public class Payment extends javax.swing.JFrame {
             Rental_IDComboBox.removeAllItems();
             Rental_IDComboBox.addItem("Select Rental ID");
 
-            String response = ServerConnection.getInstance().sendRequest("LIST|Rentals");
-            if (response.startsWith("SUCCESS|")) {
-                String[] rentals = response.substring(8).split(";");
-                for (String rental : rentals) {
-                    Rental_IDComboBox.addItem(rental);
-                }
-            }
+            // Rows arrive in chunks, so the list never has to fit in one response line
+            ServerConnection.getInstance().streamList("Rentals", Rental_IDComboBox::addItem);
         } catch (Exception e) {
             JOptionPane.showMessageDialog(this, "Error loading rental IDs: " + e.getMessage());
         }
@@ -45,13 +41,8 @@ public class Payment extends javax.swing.JFrame {
             cmbPaymentID.removeAllItems();
             cmbPaymentID.addItem("Select Payment ID");
 
-            String response = ServerConnection.getInstance().sendRequest("LIST|Payments");
-            if (response.startsWith("SUCCESS|")) {
-                String[] payments = response.substring(8).split(";");
-                for (String payment : payments) {
-                    cmbPaymentID.addItem(payment);
-                }
-            }
+            // Rows arrive in chunks, so the list never has to fit in one response line
+            ServerConnection.getInstance().streamList("Payments", cmbPaymentID::addItem);
         } catch (Exception e) {
             JOptionPane.showMessageDialog(this, "Error loading payment IDs: " + e.getMessage());
         }
@@ -134,19 +125,12 @@ public class Payment extends javax.swing.JFrame {
             int rentalId = extractIdFromComboBox(rentalStr);
 
             // Find rental details to get the amount
-            String response = ServerConnection.getInstance().sendRequest("FIND|Rentals|" + rentalId);
-
-            if (response.startsWith("SUCCESS|")) {
-                String[] data = response.substring(8).split(",");
-                // The total_amount is at index 5 in the rental data
-                if (data.length > 5) {
-                    double totalAmount = Double.parseDouble(data[5]);
-                    txtAmountField.setText(String.format("%.2f", totalAmount));
-                } else {
-                    System.out.println("Invalid rental data format: " + response);
-                }
+            TypedRecord rental = ServerConnection.getInstance().findRecord("Rentals", rentalId);
+            BigDecimal totalAmount = rental.getDecimal("total_amount");
+            if (totalAmount != null) {
+                txtAmountField.setText(String.format("%.2f", totalAmount));
             } else {
-                System.out.println("Error loading rental amount: " + response);
+                System.out.println("Rental " + rentalId + " has no total amount");
             }
         } catch (Exception e) {
             System.out.println("Error loading rental amount: " + e.getMessage());
@@ -466,15 +450,13 @@ public class Payment extends javax.swing.JFrame {
             java.sql.Date payDate = new java.sql.Date(PaymentDateChooser.getDate().getTime());
             String method = PaymentMtdComboBox.getSelectedItem().toString();
 
-            // Create payment data
-            String paymentData = rentalId + "," + amount + ","
-                    + new SimpleDateFormat("yyyy-MM-dd").format(payDate) + ","
-                    + method + ",Completed";
-
-            String response = ServerConnection.getInstance().sendRequest("ADD|Payments|" + paymentData);
+            // The server records the payment, completes the rental and releases the car in one transaction
+            String response = ServerConnection.getInstance().sendFields("PAY", "Payments",
+                    String.valueOf(rentalId), String.valueOf(amount),
+                    new SimpleDateFormat("yyyy-MM-dd").format(payDate), method);
 
             if (response.startsWith("SUCCESS|")) {
-                JOptionPane.showMessageDialog(this, "Payment processed successfully!");
+                JOptionPane.showMessageDialog(this, "Payment #" + response.substring(8) + " processed successfully!");
                 clearForm();
                 loadPaymentIDs();
                 loadRentalIDs();
@@ -3,12 +3,21 @@ package carrental.client;
 
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
 
 /**
  * ServerConnection - Client Module
  * Manages the singleton TCP socket connection to the Car Rental Server.
  * Provides centralized communication for all client requests using a text-based protocol.
  * Connects to server at 127.0.0.1:5000.
+ * 
+ * On connect the client offers the binary framing (HELLO|BINARY). If the server accepts,
+ * every request is sent as a length-prefixed frame and every response frame is turned
+ * back into the usual STATUS|payload line, so callers never see the difference.
+ * Older servers answer with an error and the connection stays on the text protocol.
+ * Start the client with -Dcarrental.client.textProtocol=true to skip the negotiation.
  */
 public class ServerConnection {
     private static ServerConnection instance;
@@ -17,6 +26,21 @@ public class ServerConnection {
     private PrintWriter writer;
     private static final String SERVER_HOST = "127.0.0.1";
     private static final int SERVER_PORT = 5000;
+    private static final int MAX_BUSY_RETRIES = 3;
+    private static final String BATCH_SEPARATOR = "\u001E";
+    private static final int LIST_PAGE_SIZE = 500;
+    
+    private static final String BINARY_HELLO = "HELLO|BINARY";
+    private static final String BINARY_HELLO_ACK = "SUCCESS|BINARY";
+    // Must match the opcode, table and status tables of the server's BinaryProtocol
+    private static final String[] BINARY_ACTIONS = {"", "ADD", "UPDATE", "DELETE", "FIND", "LIST", "STREAM", "REPORT", "BATCH", "RECORD", "STATS", "RENT", "PAY", "AUTH", "AVAILABLE"};
+    private static final String[] BINARY_TABLES = {"", "Cars", "Branches", "Insurance", "Damages", "EmployeeAssignments",
+        "VehicleMaintenance", "Rentals", "Payments", "Customers", "Employees"};
+    private static final String[] BINARY_STATUSES = {"SUCCESS", "ERROR", "BUSY", "CHUNK", "END", "RECORD"};
+    
+    private boolean binary;
+    private DataInputStream frameIn;
+    private DataOutputStream frameOut;
     
     /**
      * Private constructor to enforce singleton pattern.
@@ -25,13 +49,40 @@ public class ServerConnection {
     private ServerConnection() {
         try {
             socket = new Socket(SERVER_HOST, SERVER_PORT);
-            InputStreamReader stream = new InputStreamReader(socket.getInputStream());
-            reader = new BufferedReader(stream);
-            writer = new PrintWriter(socket.getOutputStream(), true);
+            if (!Boolean.getBoolean("carrental.client.textProtocol")) {
+                binary = negotiateBinary();
+            }
+            if (binary) {
+                frameIn = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 8192));
+                frameOut = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 8192));
+            } else {
+                InputStreamReader stream = new InputStreamReader(socket.getInputStream());
+                reader = new BufferedReader(stream);
+                writer = new PrintWriter(socket.getOutputStream(), true);
+            }
         } catch (IOException e) {
         }
     }
     
+    /**
+     * Offers the binary framing to the server. The answer is read byte by byte so that
+     * nothing after it is consumed before the frame or text streams are created.
+     * 
+     * @return true if the server switched the connection to binary frames
+     */
+    private boolean negotiateBinary() throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write((BINARY_HELLO + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        InputStream in = socket.getInputStream();
+        ByteArrayOutputStream answer = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            answer.write(b);
+        }
+        return BINARY_HELLO_ACK.equals(answer.toString(StandardCharsets.UTF_8));
+    }
+    
     /**
      * Returns the singleton instance of ServerConnection.
      * Creates the instance if it doesn't exist.
@@ -48,17 +99,350 @@ public class ServerConnection {
     /**
      * Sends a request to the server and waits for the response.
      * Request format: ACTION|TABLE|DATA
+     * If the server answers BUSY|retry-after-ms the request is retried after the
+     * suggested delay, up to MAX_BUSY_RETRIES times.
      * 
      * @param request the formatted request string to send
      * @return the server's response string, or error message if communication fails
      */
-    public String sendRequest(String request) {
+    public synchronized String sendRequest(String request) {
+        return exchange(() -> writeLine(request));
+    }
+    
+    /**
+     * Sends a request whose data is a list of fields, e.g. the columns of an ADD or UPDATE.
+     * On a binary connection every field is sent length-prefixed, so values may contain
+     * commas or pipes. On a text connection the fields are joined the way the server
+     * splits them: with '|' for Damages (a '|' inside a value is sent as '¦'), with ',' otherwise.
+     * 
+     * @param action the action, e.g. "ADD"
+     * @param table the table, e.g. "Damages"
+     * @param fields the field values in column order
+     * @return the server's response string, or error message if communication fails
+     */
+    public synchronized String sendFields(String action, String table, String... fields) {
+        if (!binary) {
+            return sendRequest(action + "|" + table + "|" + joinFields(table, fields));
+        }
+        return exchange(() -> writeFrame(0, action, table, fields));
+    }
+    
+    /**
+     * Logs an employee in with one AUTH request. The session belongs to this connection:
+     * the following requests run under it, and it ends when the connection closes.
+     * The password is sent as typed and only checked by the server.
+     * 
+     * @param email the employee's email
+     * @param password the password
+     * @return SUCCESS|message, or the server's error message
+     */
+    public synchronized String authenticate(String email, String password) {
+        return binary ? exchange(() -> writeFrame(0, "AUTH", "", new String[]{email, password}))
+                : sendRequest("AUTH|" + email + "," + password);
+    }
+    
+    private interface Send {
+        void run() throws IOException;
+    }
+    
+    /**
+     * Sends one request and reads its response, retrying after BUSY|retry-after-ms.
+     */
+    private String exchange(Send send) {
         try {
-            writer.println(request);
-            return reader.readLine();
-        } catch (IOException e) {
+            for (int attempt = 0; ; attempt++) {
+                send.run();
+                flush();
+                String response = readLine();
+                if (response == null || !response.startsWith("BUSY|")) {
+                    return response;
+                }
+                if (attempt == MAX_BUSY_RETRIES) {
+                    return "ERROR|Server is busy, please try again";
+                }
+                Thread.sleep(Long.parseLong(response.substring(5).trim()));
+            }
+        } catch (IOException | NumberFormatException e) {
             return "ERROR|Connection failed";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "ERROR|Request interrupted";
+        }
+    }
+    
+    /**
+     * Finds one row and returns its fields by column name.
+     * A binary connection asks for the typed record (RECORD|TABLE|id); a text connection
+     * sends FIND|TABLE|id and parses the response with the same schema.
+     * 
+     * @param table the table, e.g. "Cars"
+     * @param id the primary key
+     * @return the row
+     * @throws IOException with the server's message if the row cannot be read
+     */
+    public TypedRecord findRecord(String table, int id) throws IOException {
+        String response = sendRequest((binary ? "RECORD|" : "FIND|") + table + "|" + id);
+        if (response == null) {
+            throw new IOException("Connection failed");
+        }
+        int separator = response.indexOf('|');
+        String status = separator < 0 ? response : response.substring(0, separator);
+        String data = response.substring(separator + 1);
+        try {
+            if (status.equals("RECORD")) {
+                return TypedRecord.decode(table, data.getBytes(StandardCharsets.ISO_8859_1));
+            }
+            if (status.equals("SUCCESS")) {
+                return TypedRecord.parse(table, data);
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid " + table + " record: " + e.getMessage(), e);
+        }
+        throw new IOException(data);
+    }
+    
+    /**
+     * Sends several independent requests in one round trip and waits for all responses.
+     * Each request is tagged with a correlation id (#id|ACTION|TABLE|DATA) so the server
+     * may run them concurrently and answer in any order; the responses are matched back
+     * by id. Requests answered with BUSY are retried one by one through sendRequest.
+     * 
+     * @param requests the formatted request strings to send
+     * @return the responses, in the same order as the requests
+     */
+    public synchronized String[] sendPipelined(String... requests) {
+        String[] responses = new String[requests.length];
+        try {
+            // Ids start at 1: a binary frame with id 0 is an untagged request
+            for (int i = 0; i < requests.length; i++) {
+                writeLine("#" + (i + 1) + "|" + requests[i]);
+            }
+            flush();
+
+            for (int received = 0; received < requests.length; received++) {
+                String line = readLine();
+                if (line == null) {
+                    break;
+                }
+                int separator = line.indexOf('|');
+                responses[Integer.parseInt(line.substring(1, separator)) - 1] = line.substring(separator + 1);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Unanswered requests are reported below
+        }
+
+        for (int i = 0; i < requests.length; i++) {
+            if (responses[i] == null) {
+                responses[i] = "ERROR|Connection failed";
+            } else if (responses[i].startsWith("BUSY|")) {
+                responses[i] = sendRequest(requests[i]);
+            }
+        }
+        return responses;
+    }
+    
+    /**
+     * Sends several ADD, UPDATE or DELETE requests as one BATCH request.
+     * The server runs them in one transaction: either all of them succeed or none does.
+     * 
+     * @param requests the formatted request strings, executed in this order
+     * @return SUCCESS| followed by the per-request responses separated by the ASCII
+     *         record separator, or an ERROR response naming the failed request
+     */
+    public String sendBatch(String... requests) {
+        return sendRequest("BATCH|" + String.join(BATCH_SEPARATOR, requests));
+    }
+    
+    /**
+     * Lists a table page by page (LIST|TABLE|limit,after_id) and hands every row to
+     * the consumer, so a large table never has to arrive as one huge response line.
+     * 
+     * @param table the table to list, e.g. "Customers"
+     * @param rowConsumer receives each row in ID order
+     * @return null when all pages were read, otherwise the server's error message
+     */
+    public String listPages(String table, Consumer<String> rowConsumer) {
+        String after = "";
+        do {
+            String response = sendRequest("LIST|" + table + "|" + LIST_PAGE_SIZE + "," + after);
+            if (response == null || !response.startsWith("SUCCESS|")) {
+                return response == null ? "Connection failed" : response.substring(response.indexOf('|') + 1);
+            }
+            // Format: SUCCESS|next_after_id|row;row;...
+            int separator = response.indexOf('|', 8);
+            after = response.substring(8, separator);
+            String rows = response.substring(separator + 1);
+            if (!rows.isEmpty()) {
+                for (String row : rows.split(";")) {
+                    rowConsumer.accept(row);
+                }
+            }
+        } while (!after.isEmpty());
+        return null;
+    }
+    
+    /**
+     * Lists a whole table with STREAM|TABLE| and hands every row to the consumer as
+     * the CHUNK|row;row;... frames arrive, so only one chunk is held in memory at a time.
+     * The server ends the stream with END|row_count, or ERROR|message on failure.
+     * 
+     * @param table the table to list, e.g. "Rentals"
+     * @param rowConsumer receives each row in ID order
+     * @return null when the whole table was read, otherwise the server's error message
+     */
+    public synchronized String streamList(String table, Consumer<String> rowConsumer) {
+        try {
+            writeLine("STREAM|" + table + "|");
+            flush();
+            String line;
+            while ((line = readLine()) != null) {
+                if (line.startsWith("CHUNK|")) {
+                    for (String row : line.substring(6).split(";")) {
+                        rowConsumer.accept(row);
+                    }
+                } else if (line.startsWith("END|")) {
+                    return null;
+                } else {
+                    return line.substring(line.indexOf('|') + 1);
+                }
+            }
+            return "Connection failed";
+        } catch (IOException e) {
+            return "Connection failed";
+        }
+    }
+    
+    /**
+     * Writes one request line, or the equivalent frame on a binary connection.
+     * An optional #id| prefix becomes the frame's request id. Call flush() afterwards.
+     */
+    private void writeLine(String request) throws IOException {
+        if (!binary) {
+            writer.print(request);
+            writer.print('\n');
+            return;
+        }
+        int id = 0;
+        String body = request;
+        if (request.startsWith("#")) {
+            int separator = request.indexOf('|');
+            id = Integer.parseInt(request.substring(1, separator));
+            body = request.substring(separator + 1);
+        }
+        String[] parts = body.split("\\|", 3);
+        String action = parts[0];
+        String table = parts.length > 1 ? parts[1] : "";
+        String data = parts.length > 2 ? parts[2] : "";
+        String[] fields;
+        switch (action) {
+            case "ADD":
+            case "UPDATE":
+                fields = splitFields(table, data);
+                break;
+            case "BATCH":
+                fields = body.substring(action.length() + 1).split(BATCH_SEPARATOR);
+                table = "";
+                break;
+            case "REPORT":
+                fields = new String[]{table, data};
+                table = "";
+                break;
+            case "AVAILABLE":
+                // AVAILABLE|start,end: the dates are the TABLE part
+                fields = table.split(",", 2);
+                table = "";
+                break;
+            default:
+                fields = new String[]{data};
+        }
+        writeFrame(id, action, table, fields);
+    }
+    
+    /**
+     * Writes a binary request frame: length, id, opcode, table id, field count, then
+     * each field as its UTF-8 byte length followed by the bytes.
+     */
+    private void writeFrame(int id, String action, String table, String[] fields) throws IOException {
+        int opcode = Arrays.asList(BINARY_ACTIONS).indexOf(action);
+        int tableId = Arrays.asList(BINARY_TABLES).indexOf(table);
+        if (opcode <= 0 || tableId < 0) {
+            throw new IOException("Cannot frame " + action + "|" + table);
+        }
+        byte[][] encoded = new byte[fields.length][];
+        int length = 4 + 1 + 1 + 2;
+        for (int i = 0; i < fields.length; i++) {
+            encoded[i] = fields[i].getBytes(StandardCharsets.UTF_8);
+            length += 4 + encoded[i].length;
+        }
+        frameOut.writeInt(length);
+        frameOut.writeInt(id);
+        frameOut.writeByte(opcode);
+        frameOut.writeByte(tableId);
+        frameOut.writeShort(fields.length);
+        for (byte[] field : encoded) {
+            frameOut.writeInt(field.length);
+            frameOut.write(field);
+        }
+    }
+    
+    private void flush() throws IOException {
+        if (binary) {
+            frameOut.flush();
+        } else {
+            writer.flush();
+        }
+    }
+    
+    /**
+     * Reads one response line, or one response frame turned back into
+     * [#id|]STATUS|payload on a binary connection.
+     * 
+     * @return the response line, or null at end of stream
+     */
+    private String readLine() throws IOException {
+        if (!binary) {
+            return reader.readLine();
+        }
+        int length;
+        try {
+            length = frameIn.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        int id = frameIn.readInt();
+        int status = frameIn.readUnsignedByte();
+        byte[] payload = new byte[length - 5];
+        frameIn.readFully(payload);
+        String statusName = status < BINARY_STATUSES.length ? BINARY_STATUSES[status] : "ERROR";
+        // A typed record is binary: keep its bytes one char each so findRecord can restore them
+        String line = statusName + "|" + new String(payload,
+                statusName.equals("RECORD") ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+        return id == 0 ? line : "#" + id + "|" + line;
+    }
+    
+    /**
+     * Splits the DATA of an ADD or UPDATE line into fields, the same way the server does.
+     */
+    private static String[] splitFields(String table, String data) {
+        if (!"Damages".equals(table)) {
+            return data.split(",");
+        }
+        String[] fields = data.split("\\|");
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = fields[i].replace('¦', '|');
+        }
+        return fields;
+    }
+    
+    private static String joinFields(String table, String[] fields) {
+        if (!"Damages".equals(table)) {
+            return String.join(",", fields);
+        }
+        String[] escaped = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            escaped[i] = fields[i].replace('|', '¦');
         }
+        return String.join("|", escaped);
     }
     
     /**
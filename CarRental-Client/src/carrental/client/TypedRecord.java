@@ -0,0 +1,219 @@
+package carrental.client;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * TypedRecord - Client Module
+ * One row returned by ServerConnection.findRecord, with its fields read by column name
+ * instead of by position in a comma-joined string.
+ * Binary connections receive the row as a typed record (varint integers, fixed-point
+ * decimals, epoch-day dates and a null bitmap) which is decoded without any string
+ * splitting; text connections parse the ordinary FIND response with the same schema.
+ * The schemas must match the server's RecordSchema.
+ */
+public class TypedRecord {
+
+    private static final char INT = 'I';
+    private static final char DECIMAL = 'D';
+    private static final char DATE = 'T';
+    private static final char STRING = 'S';
+    private static final int DECIMAL_SCALE = 2;
+
+    private static final Map<String, String[]> names = new HashMap<>();
+    private static final Map<String, char[]> types = new HashMap<>();
+
+    static {
+        schema("Cars", "make S", "model S", "year I", "license_plate S", "rental_rate D", "status S",
+                "color S", "mileage I");
+        schema("Branches", "branch_name S", "address S", "city S", "phone_number S", "email S",
+                "manager_id I", "status S");
+        schema("Insurance", "car_id I", "policy_number S", "insurance_company S", "coverage_amount D",
+                "premium_amount D", "start_date T", "end_date T", "status S");
+        schema("Damages", "rental_id I", "car_id I", "description S", "repair_cost D", "reported_date T",
+                "status S");
+        schema("EmployeeAssignments", "employee_id I", "branch_id I", "assignment_type S",
+                "assignment_date T", "description S", "status S");
+        schema("VehicleMaintenance", "car_id I", "service_date T", "description S", "cost D");
+        schema("Rentals", "customer_id I", "car_id I", "employee_id I", "start_date T", "end_date T",
+                "total_amount D", "status S");
+        schema("Payments", "rental_id I", "amount D", "payment_date T", "payment_method S",
+                "payment_status S");
+        schema("Customers", "first_name S", "last_name S", "email S", "phone_number S", "address S",
+                "license_number S");
+        schema("Employees", "first_name S", "last_name S", "email S", "phone_number S", "address S");
+    }
+
+    private static void schema(String table, String... columns) {
+        String[] columnNames = new String[columns.length];
+        char[] columnTypes = new char[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            columnNames[i] = columns[i].substring(0, columns[i].length() - 2);
+            columnTypes[i] = columns[i].charAt(columns[i].length() - 1);
+        }
+        names.put(table, columnNames);
+        types.put(table, columnTypes);
+    }
+
+    private final String[] columns;
+    private final Object[] values;
+
+    private TypedRecord(String[] columns, Object[] values) {
+        this.columns = columns;
+        this.values = values;
+    }
+
+    /**
+     * Decodes a typed record received on a binary connection.
+     *
+     * @param table the table the record belongs to
+     * @param bytes the record bytes (the payload after RECORD|)
+     * @return the decoded record
+     * @throws IllegalArgumentException if the table is unknown or the record does not fit its schema
+     */
+    static TypedRecord decode(String table, byte[] bytes) {
+        char[] columnTypes = schemaTypes(table);
+        int count = bytes[0] & 0xFF;
+        if (count != columnTypes.length) {
+            throw new IllegalArgumentException("Record has " + count + " columns, expected " + columnTypes.length);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.position(1 + (count + 7) / 8);
+        Object[] values = new Object[count];
+        for (int i = 0; i < count; i++) {
+            if ((bytes[1 + (i >> 3)] & (1 << (i & 7))) != 0) {
+                continue;
+            }
+            switch (columnTypes[i]) {
+                case STRING:
+                    int length = (int) readVarint(buffer);
+                    values[i] = new String(bytes, buffer.position(), length, StandardCharsets.UTF_8);
+                    buffer.position(buffer.position() + length);
+                    break;
+                case DECIMAL:
+                    values[i] = BigDecimal.valueOf(unzigzag(readVarint(buffer)), DECIMAL_SCALE);
+                    break;
+                case DATE:
+                    values[i] = LocalDate.ofEpochDay(unzigzag(readVarint(buffer)));
+                    break;
+                default:
+                    values[i] = unzigzag(readVarint(buffer));
+            }
+        }
+        return new TypedRecord(names.get(table), values);
+    }
+
+    /**
+     * Parses the data of a text FIND response with the table's schema.
+     * Empty and "null" fields become null.
+     *
+     * @param table the table the record belongs to
+     * @param data the FIND response after SUCCESS|
+     * @return the parsed record
+     * @throws IllegalArgumentException if the table is unknown or a field cannot be parsed
+     */
+    static TypedRecord parse(String table, String data) {
+        char[] columnTypes = schemaTypes(table);
+        // Damages rows are pipe-delimited with pipes in values sent as ¦
+        boolean damages = "Damages".equals(table);
+        String[] fields = data.split(damages ? "\\|" : ",", -1);
+        Object[] values = new Object[columnTypes.length];
+        for (int i = 0; i < columnTypes.length && i < fields.length; i++) {
+            String field = damages ? fields[i].replace('¦', '|') : fields[i];
+            if (field.isEmpty() || field.equals("null")) {
+                continue;
+            }
+            switch (columnTypes[i]) {
+                case STRING:
+                    values[i] = field;
+                    break;
+                case DECIMAL:
+                    values[i] = new BigDecimal(field).setScale(DECIMAL_SCALE, RoundingMode.HALF_UP);
+                    break;
+                case DATE:
+                    values[i] = LocalDate.parse(field);
+                    break;
+                default:
+                    values[i] = Long.parseLong(field);
+            }
+        }
+        return new TypedRecord(names.get(table), values);
+    }
+
+    private static char[] schemaTypes(String table) {
+        char[] columnTypes = types.get(table);
+        if (columnTypes == null) {
+            throw new IllegalArgumentException("Unknown table: " + table);
+        }
+        return columnTypes;
+    }
+
+    private static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private Object value(String column) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].equals(column)) {
+                return values[i];
+            }
+        }
+        throw new IllegalArgumentException("Unknown column: " + column);
+    }
+
+    /**
+     * @param column the column name, e.g. "year"
+     * @return the integer value, or null if the column is NULL
+     */
+    public Integer getInt(String column) {
+        Long value = (Long) value(column);
+        return value == null ? null : Math.toIntExact(value);
+    }
+
+    /**
+     * @param column the column name, e.g. "rental_rate"
+     * @return the value with two decimal places, or null if the column is NULL
+     */
+    public BigDecimal getDecimal(String column) {
+        return (BigDecimal) value(column);
+    }
+
+    /**
+     * @param column the column name, e.g. "start_date"
+     * @return the date, or null if the column is NULL
+     */
+    public LocalDate getDate(String column) {
+        return (LocalDate) value(column);
+    }
+
+    /**
+     * Returns any column as display text: dates as yyyy-MM-dd, decimals with two
+     * decimal places and NULL as an empty string.
+     *
+     * @param column the column name, e.g. "make"
+     * @return the text value, never null
+     */
+    public String getString(String column) {
+        Object value = value(column);
+        if (value == null) {
+            return "";
+        }
+        return value instanceof BigDecimal ? ((BigDecimal) value).toPlainString() : value.toString();
+    }
+}
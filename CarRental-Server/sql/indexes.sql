@@ -0,0 +1,6 @@
+-- Car Rental Server
+-- Indexes the server's queries rely on. Run once against car_rental_sys:
+--   mysql -u root -p car_rental_sys < sql/indexes.sql
+
+-- AUTH looks employees up by email (Authenticator)
+CREATE INDEX idx_employees_login_email ON employees_login(email);
@@ -0,0 +1,236 @@
+/*
+ * Car Rental Server
+ * Asynchronous request/response log
+ */
+package carrental.server;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * AccessLog - Server Module
+ * Logs one line per request without slowing the request down. Request threads only
+ * claim a slot in a lock-free ring buffer with a compare-and-set and store the
+ * request, response and timing there; a single background thread truncates the
+ * payloads, formats the lines and writes them to a size-rotated file.
+ * When the ring is full the entry is dropped and counted instead of waiting.
+ *
+ * File, sampling, truncation and rotation are set in ServerConfig (ACCESS_LOG_*).
+ *
+ * @author Izaek Kisuule
+ */
+public final class AccessLog {
+
+    private static final String FILE = ServerConfig.ACCESS_LOG_FILE;
+    private static final double SAMPLE_RATE = ServerConfig.ACCESS_LOG_SAMPLE_RATE;
+    private static final int MAX_PAYLOAD_CHARS = ServerConfig.ACCESS_LOG_MAX_PAYLOAD_CHARS;
+    private static final long MAX_FILE_BYTES = ServerConfig.ACCESS_LOG_MAX_FILE_BYTES;
+    private static final int MAX_FILES = ServerConfig.ACCESS_LOG_MAX_FILES;
+    /** Ring buffer capacity, rounded up to a power of two. */
+    private static final int CAPACITY = Integer.highestOneBit(Math.max(2, ServerConfig.ACCESS_LOG_BUFFER_ENTRIES) * 2 - 1);
+
+    private static final boolean ENABLED = !FILE.isEmpty() && !"off".equals(FILE);
+
+    /**
+     * One logged request, filled in by the request thread.
+     */
+    private static final class Entry {
+        final long timeMillis;
+        final int clientId;
+        final long micros;
+        final String request;
+        final String response;
+
+        Entry(long timeMillis, int clientId, long micros, String request, String response) {
+            this.timeMillis = timeMillis;
+            this.clientId = clientId;
+            this.micros = micros;
+            this.request = request;
+            this.response = response;
+        }
+    }
+
+    private static final AccessLog INSTANCE = ENABLED ? new AccessLog() : null;
+
+    private final AtomicReferenceArray<Entry> ring = new AtomicReferenceArray<>(CAPACITY);
+    private final int mask = CAPACITY - 1;
+    /** Next slot to claim; advanced by request threads. */
+    private final AtomicLong tail = new AtomicLong();
+    /** Next slot to write; only the writer thread advances it. */
+    private volatile long head;
+    /** Value of head at the writer's last flush; lets the shutdown hook wait for it. */
+    private volatile long flushed;
+    private final AtomicLong dropped = new AtomicLong();
+    /** Drops already noted in the file; only the writer thread uses it. */
+    private long reportedDrops;
+
+    private final Thread writer;
+    private Writer out;
+    private long fileBytes;
+
+    private AccessLog() {
+        writer = new Thread(this::drain, "access-log");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "access-log-flush"));
+    }
+
+    /**
+     * Records a served request. Never blocks: the entry is dropped if the ring is full.
+     *
+     * @param clientId the client that sent the request
+     * @param request the request as received (text form)
+     * @param response the response text, or a short description for binary responses
+     * @param startNanos System.nanoTime() taken when the request started
+     */
+    static void log(int clientId, String request, String response, long startNanos) {
+        AccessLog log = INSTANCE;
+        if (log == null) {
+            return;
+        }
+        boolean failed = response.startsWith("ERROR|") || response.startsWith("BUSY|");
+        if (!failed && SAMPLE_RATE < 1.0 && ThreadLocalRandom.current().nextDouble() >= SAMPLE_RATE) {
+            return;
+        }
+        long micros = (System.nanoTime() - startNanos) / 1000;
+        log.offer(new Entry(System.currentTimeMillis(), clientId, micros, request, response));
+    }
+
+    /**
+     * @return number of entries dropped because the ring buffer was full
+     */
+    static long droppedEntries() {
+        return INSTANCE == null ? 0 : INSTANCE.dropped.get();
+    }
+
+    private void offer(Entry entry) {
+        while (true) {
+            long slot = tail.get();
+            if (slot - head >= CAPACITY) {
+                dropped.incrementAndGet();
+                return;
+            }
+            if (tail.compareAndSet(slot, slot + 1)) {
+                ring.lazySet((int) slot & mask, entry);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writer thread: takes entries in slot order, writes them and flushes
+     * whenever the ring runs empty.
+     */
+    private void drain() {
+        long idleNanos = TimeUnit.MICROSECONDS.toNanos(100);
+        StringBuilder line = new StringBuilder(2 * MAX_PAYLOAD_CHARS + 64);
+        while (true) {
+            Entry entry = ring.get((int) head & mask);
+            if (entry == null) {
+                flush();
+                // Back off up to 10 ms while idle; a claimed slot is filled within nanoseconds
+                LockSupport.parkNanos(idleNanos);
+                idleNanos = Math.min(idleNanos * 2, TimeUnit.MILLISECONDS.toNanos(10));
+                continue;
+            }
+            idleNanos = TimeUnit.MICROSECONDS.toNanos(100);
+            ring.lazySet((int) head & mask, null);
+            head = head + 1;
+            write(format(entry, line));
+        }
+    }
+
+    private String format(Entry entry, StringBuilder line) {
+        line.setLength(0);
+        line.append(Instant.ofEpochMilli(entry.timeMillis))
+                .append(" client=").append(entry.clientId)
+                .append(" us=").append(entry.micros)
+                .append(" request=");
+        truncate(entry.request, line);
+        line.append(" response=");
+        truncate(entry.response, line);
+        long drops = dropped.get();
+        if (drops != reportedDrops) {
+            line.append(System.lineSeparator()).append(Instant.ofEpochMilli(entry.timeMillis))
+                    .append(" dropped=").append(drops - reportedDrops);
+            reportedDrops = drops;
+        }
+        return line.append(System.lineSeparator()).toString();
+    }
+
+    private static void truncate(String text, StringBuilder line) {
+        if (text.length() <= MAX_PAYLOAD_CHARS) {
+            line.append(text);
+        } else {
+            line.append(text, 0, MAX_PAYLOAD_CHARS)
+                    .append("...(").append(text.length()).append(" chars)");
+        }
+    }
+
+    private void write(String line) {
+        try {
+            if (out == null || fileBytes >= MAX_FILE_BYTES) {
+                rotate();
+            }
+            out.write(line);
+            fileBytes += line.length();
+        } catch (IOException e) {
+            System.err.println("Access log error: " + e.getMessage());
+            out = null;
+        }
+    }
+
+    private void flush() {
+        flushed = head;
+        if (out != null) {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                System.err.println("Access log error: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Closes the current file, shifts file.1 ... file.(n-1) up by one, renames the
+     * current file to file.1 and opens a fresh one. The first call only opens the file.
+     */
+    private void rotate() throws IOException {
+        Path path = Paths.get(FILE);
+        if (out != null) {
+            out.close();
+            out = null;
+            for (int i = MAX_FILES - 1; i >= 1; i--) {
+                Path older = Paths.get(FILE + "." + i);
+                if (Files.exists(older)) {
+                    Files.move(older, Paths.get(FILE + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            if (MAX_FILES > 0) {
+                Files.move(path, Paths.get(FILE + ".1"), StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.deleteIfExists(path);
+            }
+        }
+        fileBytes = Files.exists(path) ? Files.size(path) : 0;
+        out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(path.toFile(), true), StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    /**
+     * Gives the writer thread up to a second to write and flush what is queued.
+     */
+    private void shutdown() {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (flushed != tail.get() && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+}
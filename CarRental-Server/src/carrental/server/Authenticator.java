@@ -0,0 +1,162 @@
+/*
+ * Car Rental Server
+ * Employee authentication and password hashing
+ */
+package carrental.server;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.sql.*;
+import java.util.Base64;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Authenticator - Server Module
+ * Checks an employee's email and password with one indexed lookup (AUTH action and
+ * the server Login screen) and opens a session with the employee's role and branch.
+ *
+ * Passwords are stored as salted PBKDF2-HMAC-SHA256 hashes in the form
+ * pbkdf2$iterations$salt$hash (Base64). Rows written before hashing was introduced
+ * still hold the plain password; such a row is accepted once and rewritten with a
+ * hash on that login. New and updated Employees rows are hashed by CrudEngine.
+ * The email lookup uses idx_employees_login_email from sql/indexes.sql.
+ *
+ * @author Izaek Kisuule
+ */
+final class Authenticator {
+
+    private static final String PREFIX = "pbkdf2$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private static final String LOOKUP_SQL = "SELECT employee_id, password_hash FROM employees_login WHERE email=?";
+    private static final String UPGRADE_SQL = "UPDATE employees_login SET password_hash=? WHERE employee_id=?";
+    private static final String ASSIGNMENT_SQL = "SELECT branch_id, assignment_type FROM employeeassignments "
+            + "WHERE employee_id=? AND status='Active' ORDER BY assignment_date DESC, assignment_id DESC LIMIT 1";
+
+    private static final SecureRandom random = new SecureRandom();
+
+    /** Compared against when the email is unknown, so both cases take as long. */
+    private static final String DUMMY_HASH = hash("not a password");
+
+    private Authenticator() {
+    }
+
+    /**
+     * Checks an email and password and opens a session for the employee. The role and
+     * branch come from the employee's latest Active assignment.
+     *
+     * @param email the employee's email
+     * @param password the password as typed
+     * @return the new session
+     * @throws SQLException if the credentials are wrong (with the same message whether
+     *         the email or the password was wrong) or the database fails
+     */
+    static SessionRegistry.Session authenticate(String email, String password) throws SQLException {
+        int employeeId = verify(email, password);
+        String role = SessionRegistry.DEFAULT_ROLE;
+        int branchId = 0;
+        try (Connection conn = DbConnection.getConnection()) {
+            PreparedStatement pst = conn.prepareStatement(ASSIGNMENT_SQL);
+            pst.setInt(1, employeeId);
+            try (ResultSet rs = pst.executeQuery()) {
+                if (rs.next()) {
+                    branchId = rs.getInt(1);
+                    role = rs.getString(2);
+                }
+            }
+        }
+        return SessionRegistry.open(employeeId, email, role, branchId);
+    }
+
+    /**
+     * Checks an email and password.
+     *
+     * @param email the employee's email
+     * @param password the password as typed
+     * @return the employee_id
+     * @throws SQLException if the credentials are wrong (with the same message whether
+     *         the email or the password was wrong) or the database fails
+     */
+    static int verify(String email, String password) throws SQLException {
+        int employeeId;
+        String stored;
+        try (Connection conn = DbConnection.getConnection()) {
+            PreparedStatement pst = conn.prepareStatement(LOOKUP_SQL);
+            pst.setString(1, email);
+            try (ResultSet rs = pst.executeQuery()) {
+                if (!rs.next()) {
+                    matches(password, DUMMY_HASH);
+                    throw new SQLException("Invalid email or password");
+                }
+                employeeId = rs.getInt(1);
+                stored = rs.getString(2);
+            }
+            if (stored == null || !matches(password, stored)) {
+                throw new SQLException("Invalid email or password");
+            }
+            if (!stored.startsWith(PREFIX)) {
+                PreparedStatement upgrade = conn.prepareStatement(UPGRADE_SQL);
+                upgrade.setString(1, hash(password));
+                upgrade.setInt(2, employeeId);
+                upgrade.executeUpdate();
+            }
+        }
+        if (!stored.startsWith(PREFIX)) {
+            ClientHandler.invalidate("Employees", employeeId);
+        }
+        return employeeId;
+    }
+
+    /**
+     * Hashes a password with a new random salt.
+     *
+     * @param password the password
+     * @return the stored form pbkdf2$iterations$salt$hash
+     */
+    static String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        int iterations = ServerConfig.AUTH_PBKDF2_ITERATIONS;
+        Base64.Encoder base64 = Base64.getEncoder();
+        return PREFIX + iterations + "$" + base64.encodeToString(salt) + "$"
+                + base64.encodeToString(pbkdf2(password, salt, iterations));
+    }
+
+    /**
+     * Compares a password with a stored hash, or with a legacy plain-text value,
+     * in time independent of where they differ.
+     */
+    private static boolean matches(String password, String stored) {
+        if (!stored.startsWith(PREFIX)) {
+            return MessageDigest.isEqual(password.getBytes(java.nio.charset.StandardCharsets.UTF_8),
+                    stored.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) {
+            return false;
+        }
+        try {
+            int iterations = Integer.parseInt(parts[1]);
+            byte[] salt = Base64.getDecoder().decode(parts[2]);
+            byte[] expected = Base64.getDecoder().decode(parts[3]);
+            return MessageDigest.isEqual(expected, pbkdf2(password, salt, iterations));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * Car Rental Server
+ * In-memory index of rental periods per car
+ */
+package carrental.server;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AvailabilityIndex - Server Module
+ * Answers AVAILABLE (which cars are free over a date range) from memory, without
+ * touching the rentals table. For every car the index holds the periods of its open
+ * rentals (any status but Completed or Cancelled) as an interval list sorted by start
+ * date, with the running maximum of the end dates: one binary search finds whether
+ * any period overlaps the range. Periods are whole days, start and end date included.
+ *
+ * The index is loaded from Cars and rentals on first use and then kept up to date by
+ * the request handlers: a changed rental is re-read by its key and only its car's list
+ * is replaced, cars are added and removed as they are. Changes that bypass the request
+ * handlers (the server's own screens) are picked up by a full reload every
+ * ServerConfig.AVAILABILITY_RELOAD_SECONDS.
+ *
+ * Interval lists are immutable and replaced per car, so queries never lock.
+ *
+ * @author Izaek Kisuule
+ */
+final class AvailabilityIndex {
+
+    private static final String CARS_SQL = "SELECT car_id FROM Cars";
+    private static final String OPEN_RENTALS_SQL = "SELECT rental_id, car_id, start_date, end_date FROM rentals "
+            + "WHERE status NOT IN ('Completed','Cancelled')";
+    private static final String RENTAL_SQL = "SELECT car_id, start_date, end_date, status FROM rentals WHERE rental_id=?";
+
+    /** Open rental periods per car_id; iterated in car_id order. */
+    private static volatile ConcurrentSkipListMap<Integer, Periods> cars = new ConcurrentSkipListMap<>();
+    /** car_id of every indexed rental, to find it again when it changes. */
+    private static volatile ConcurrentHashMap<Integer, Integer> carOfRental = new ConcurrentHashMap<>();
+
+    private static volatile boolean loaded;
+    private static volatile boolean stale = true;
+    /** Counts incremental changes, so a reload that overlapped one can tell it missed it. */
+    private static final AtomicLong changes = new AtomicLong();
+    private static final ReentrantLock reloadLock = new ReentrantLock();
+    /** Orders the re-reads of the same rental. */
+    private static final StripedLocks rowLocks = new StripedLocks(ServerConfig.RENT_LOCK_STRIPES);
+
+    static {
+        long interval = ServerConfig.AVAILABILITY_RELOAD_SECONDS;
+        if (interval > 0) {
+            ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "availability-reload");
+                thread.setDaemon(true);
+                return thread;
+            });
+            timer.scheduleAtFixedRate(() -> {
+                if (loaded) {
+                    try {
+                        reload();
+                    } catch (SQLException e) {
+                        System.err.println("Availability index reload failed: " + e.getMessage());
+                    }
+                }
+            }, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * The open rental periods of one car, sorted by start day, as epoch days.
+     */
+    private static final class Periods {
+        static final Periods NONE = new Periods(new int[0], new int[0], new int[0]);
+
+        final int[] rentalIds;
+        final int[] starts;
+        final int[] ends;
+        /** maxEnds[i] is the latest end of periods 0..i. */
+        final int[] maxEnds;
+
+        Periods(int[] rentalIds, int[] starts, int[] ends) {
+            this.rentalIds = rentalIds;
+            this.starts = starts;
+            this.ends = ends;
+            maxEnds = new int[ends.length];
+            for (int i = 0; i < ends.length; i++) {
+                maxEnds[i] = i == 0 ? ends[0] : Math.max(maxEnds[i - 1], ends[i]);
+            }
+        }
+
+        /**
+         * @return true if a period shares at least one day with [from, to]
+         */
+        boolean overlaps(int from, int to) {
+            // Periods starting after 'to' cannot overlap; of the others, the latest end decides
+            int count = upperBound(starts, to);
+            return count > 0 && maxEnds[count - 1] >= from;
+        }
+
+        Periods with(int rentalId, int start, int end) {
+            Periods base = without(rentalId);
+            int at = upperBound(base.starts, start);
+            return new Periods(insert(base.rentalIds, at, rentalId), insert(base.starts, at, start),
+                    insert(base.ends, at, end));
+        }
+
+        Periods without(int rentalId) {
+            for (int i = 0; i < rentalIds.length; i++) {
+                if (rentalIds[i] == rentalId) {
+                    return new Periods(remove(rentalIds, i), remove(starts, i), remove(ends, i));
+                }
+            }
+            return this;
+        }
+
+        private static int upperBound(int[] sorted, int value) {
+            int low = 0;
+            int high = sorted.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (sorted[mid] <= value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private static int[] insert(int[] values, int at, int value) {
+            int[] copy = new int[values.length + 1];
+            System.arraycopy(values, 0, copy, 0, at);
+            copy[at] = value;
+            System.arraycopy(values, at, copy, at + 1, values.length - at);
+            return copy;
+        }
+
+        private static int[] remove(int[] values, int at) {
+            int[] copy = new int[values.length - 1];
+            System.arraycopy(values, 0, copy, 0, at);
+            System.arraycopy(values, at + 1, copy, at, copy.length - at);
+            return copy;
+        }
+    }
+
+    private AvailabilityIndex() {
+    }
+
+    /**
+     * Lists the cars without an open rental between two dates.
+     *
+     * @param start first day of the range
+     * @param end last day of the range
+     * @return the car_ids in ascending order, separated by ';'
+     * @throws SQLException if the index has to be loaded and loading fails
+     */
+    static String available(LocalDate start, LocalDate end) throws SQLException {
+        if (stale) {
+            reloadLock.lock();
+            try {
+                // Another request may have reloaded it while this one waited
+                if (stale) {
+                    reload();
+                }
+            } finally {
+                reloadLock.unlock();
+            }
+        }
+        int from = (int) start.toEpochDay();
+        int to = (int) end.toEpochDay();
+        StringBuilder ids = new StringBuilder(256);
+        for (Map.Entry<Integer, Periods> car : cars.entrySet()) {
+            if (!car.getValue().overlaps(from, to)) {
+                if (ids.length() > 0) {
+                    ids.append(';');
+                }
+                ids.append(car.getKey());
+            }
+        }
+        return ids.toString();
+    }
+
+    /**
+     * Brings the index up to date after the server changed, added or deleted a rental:
+     * the row is re-read by key and its period moved, added or dropped. Never throws;
+     * if the row cannot be read, the index is reloaded on its next use.
+     *
+     * @param rentalId the rental_id of the changed row
+     */
+    static void rentalChanged(int rentalId) {
+        changes.incrementAndGet();
+        if (!loaded) {
+            return;
+        }
+        ReentrantLock lock = rowLocks.forKey(rentalId);
+        lock.lock();
+        try (Connection conn = DbConnection.getConnection()) {
+            PreparedStatement pst = conn.prepareStatement(RENTAL_SQL);
+            pst.setInt(1, rentalId);
+            try (ResultSet rs = pst.executeQuery()) {
+                Integer previousCar = carOfRental.remove(rentalId);
+                if (previousCar != null) {
+                    cars.computeIfPresent(previousCar, (car, periods) -> periods.without(rentalId));
+                }
+                if (!rs.next() || !isOpen(rs.getString(4))) {
+                    return;
+                }
+                int carId = rs.getInt(1);
+                int start = (int) rs.getDate(2).toLocalDate().toEpochDay();
+                int end = (int) rs.getDate(3).toLocalDate().toEpochDay();
+                cars.computeIfPresent(carId, (car, periods) -> periods.with(rentalId, start, end));
+                carOfRental.put(rentalId, carId);
+            }
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("Availability index update failed: " + e.getMessage());
+            stale = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a new car, free on every day.
+     *
+     * @param carId the car_id of the new row
+     */
+    static void carAdded(int carId) {
+        changes.incrementAndGet();
+        cars.putIfAbsent(carId, Periods.NONE);
+    }
+
+    /**
+     * Removes a deleted car.
+     *
+     * @param carId the car_id of the deleted row
+     */
+    static void carDeleted(int carId) {
+        changes.incrementAndGet();
+        cars.remove(carId);
+    }
+
+    /**
+     * Notes a change to Cars or rentals whose rows are not known individually (e.g. the
+     * ADDs of a BATCH, whose keys are not returned); the index is reloaded on its next use.
+     *
+     * @param table the changed table
+     */
+    static void tableChanged(String table) {
+        if (table.equals("Rentals") || table.equals("Cars")) {
+            changes.incrementAndGet();
+            stale = true;
+        }
+    }
+
+    private static boolean isOpen(String status) {
+        return !"Completed".equals(status) && !"Cancelled".equals(status);
+    }
+
+    /**
+     * Loads the whole index from Cars and the open rentals. Queries keep using the
+     * previous index until the new one is complete.
+     */
+    private static void reload() throws SQLException {
+        reloadLock.lock();
+        try {
+            long seen = changes.get();
+            ConcurrentSkipListMap<Integer, Periods> newCars = new ConcurrentSkipListMap<>();
+            ConcurrentHashMap<Integer, Integer> newCarOfRental = new ConcurrentHashMap<>();
+            try (Connection conn = DbConnection.getConnection()) {
+                try (ResultSet rs = conn.prepareStatement(CARS_SQL).executeQuery()) {
+                    while (rs.next()) {
+                        newCars.put(rs.getInt(1), Periods.NONE);
+                    }
+                }
+                // Collect per car first, so every car's list is built and sorted once
+                Map<Integer, List<int[]>> collected = new HashMap<>();
+                try (ResultSet rs = conn.prepareStatement(OPEN_RENTALS_SQL).executeQuery()) {
+                    while (rs.next()) {
+                        int rentalId = rs.getInt(1);
+                        int carId = rs.getInt(2);
+                        collected.computeIfAbsent(carId, car -> new ArrayList<>()).add(new int[]{rentalId,
+                            (int) rs.getDate(3).toLocalDate().toEpochDay(),
+                            (int) rs.getDate(4).toLocalDate().toEpochDay()});
+                        newCarOfRental.put(rentalId, carId);
+                    }
+                }
+                for (Map.Entry<Integer, List<int[]>> car : collected.entrySet()) {
+                    if (!newCars.containsKey(car.getKey())) {
+                        continue;
+                    }
+                    List<int[]> rows = car.getValue();
+                    rows.sort((a, b) -> Integer.compare(a[1], b[1]));
+                    int[] rentalIds = new int[rows.size()];
+                    int[] starts = new int[rows.size()];
+                    int[] ends = new int[rows.size()];
+                    for (int i = 0; i < rows.size(); i++) {
+                        rentalIds[i] = rows.get(i)[0];
+                        starts[i] = rows.get(i)[1];
+                        ends[i] = rows.get(i)[2];
+                    }
+                    newCars.put(car.getKey(), new Periods(rentalIds, starts, ends));
+                }
+            }
+            cars = newCars;
+            carOfRental = newCarOfRental;
+            loaded = true;
+            // A change that raced with the reload may be missing from it; reload again next time
+            stale = changes.get() != seen;
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+}
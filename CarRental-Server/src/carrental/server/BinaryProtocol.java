@@ -0,0 +1,213 @@
+/*
+ * Car Rental Server
+ * Length-prefixed binary framing for the request/response protocol
+ */
+package carrental.server;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * BinaryProtocol - Server Module
+ * Binary alternative to the newline-delimited text protocol. A client switches a
+ * connection to it by sending the text line HELLO|BINARY and waiting for
+ * SUCCESS|BINARY; every message after that is a frame.
+ *
+ * Request frame (big-endian):
+ *   int length (of everything after this field), int request id, byte action opcode,
+ *   byte table id, short field count, then per field: int byte length, UTF-8 bytes
+ * Response frame:
+ *   int length, int request id, byte status code, UTF-8 payload (the text after STATUS|)
+ *
+ * Fields are length-prefixed, so values may contain commas, pipes or newlines
+ * without any escaping, and the server locates every field without scanning.
+ * Request id 0 marks an untagged request; any other id behaves like a pipelined
+ * #id| request and is echoed in its response frames.
+ *
+ * RECORD is only available on binary connections: it is a FIND whose answer has
+ * status RECORD and carries the row as a typed record (see RecordSchema).
+ *
+ * @author Izaek Kisuule
+ */
+public final class BinaryProtocol {
+
+    /** Text line a client sends to switch its connection to binary frames. */
+    public static final String HELLO = "HELLO|BINARY";
+
+    /** Text answer confirming the switch; binary frames follow it. */
+    public static final String HELLO_ACK = "SUCCESS|BINARY";
+
+    /** Action opcodes; the index is the opcode sent on the wire. */
+    static final String[] ACTIONS = {"", "ADD", "UPDATE", "DELETE", "FIND", "LIST", "STREAM", "REPORT", "BATCH", "RECORD", "STATS", "RENT", "PAY", "AUTH", "AVAILABLE"};
+
+    /** Table ids; the index is the id sent on the wire, 0 means no table (REPORT, BATCH). */
+    static final String[] TABLES = {"", "Cars", "Branches", "Insurance", "Damages", "EmployeeAssignments",
+        "VehicleMaintenance", "Rentals", "Payments", "Customers", "Employees"};
+
+    /** Response status codes; the index is the code sent on the wire. */
+    static final String[] STATUSES = {"SUCCESS", "ERROR", "BUSY", "CHUNK", "END", "RECORD"};
+
+    /** Bytes of a request frame after the length field, before the first field. */
+    static final int REQUEST_HEADER_BYTES = 4 + 1 + 1 + 2;
+
+    private BinaryProtocol() {
+    }
+
+    /**
+     * A decoded request frame.
+     */
+    static final class Request {
+        final int id;
+        final String action;
+        final String table;
+        final String[] fields;
+        /** Size of the frame on the wire, including its length field. */
+        final int frameBytes;
+
+        Request(int id, String action, String table, String[] fields, int frameBytes) {
+            this.id = id;
+            this.action = action;
+            this.table = table;
+            this.fields = fields;
+            this.frameBytes = frameBytes;
+        }
+
+        /**
+         * Returns the fields as the DATA part of an equivalent text request.
+         * Only used for actions whose data is a single value (ID, page, report range).
+         *
+         * @return the first field, or "" if there is none
+         */
+        String data() {
+            return fields.length > 0 ? fields[0] : "";
+        }
+    }
+
+    /**
+     * Reads one request frame from a blocking stream.
+     *
+     * @param in the socket input
+     * @return the decoded request, or null at end of stream
+     * @throws IOException if the frame is malformed or reading fails
+     */
+    static Request read(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        checkLength(length);
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+        return decode(frame, 0, length);
+    }
+
+    /**
+     * Validates the length prefix of a request frame.
+     *
+     * @param length the announced number of bytes after the length field
+     * @throws IOException if the frame is too short or exceeds ServerConfig.MAX_REQUEST_BYTES
+     */
+    static void checkLength(int length) throws IOException {
+        if (length < REQUEST_HEADER_BYTES || length > ServerConfig.MAX_REQUEST_BYTES) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+    }
+
+    /**
+     * Decodes the body of a request frame (everything after the length field).
+     *
+     * @param buffer bytes holding the frame
+     * @param offset start of the frame body
+     * @param length number of body bytes
+     * @return the decoded request
+     * @throws IOException if the frame is malformed
+     */
+    static Request decode(byte[] buffer, int offset, int length) throws IOException {
+        int end = offset + length;
+        int position = offset;
+        int id = readInt(buffer, position);
+        int opcode = buffer[position + 4] & 0xFF;
+        int tableId = buffer[position + 5] & 0xFF;
+        int count = ((buffer[position + 6] & 0xFF) << 8) | (buffer[position + 7] & 0xFF);
+        position += REQUEST_HEADER_BYTES;
+
+        if (opcode == 0 || opcode >= ACTIONS.length || tableId >= TABLES.length) {
+            throw new IOException("Unknown opcode " + opcode + " or table " + tableId);
+        }
+
+        String[] fields = new String[count];
+        for (int i = 0; i < count; i++) {
+            if (position + 4 > end) {
+                throw new IOException("Truncated frame");
+            }
+            int size = readInt(buffer, position);
+            position += 4;
+            if (size < 0 || position + size > end) {
+                throw new IOException("Truncated frame");
+            }
+            fields[i] = new String(buffer, position, size, StandardCharsets.UTF_8);
+            position += size;
+        }
+        return new Request(id, ACTIONS[opcode], TABLES[tableId], fields, 4 + length);
+    }
+
+    /**
+     * Turns an encoded text response line (STATUS|payload\n) into a response frame.
+     * The payload bytes are copied as they are; nothing is decoded.
+     *
+     * @param id the request id to echo
+     * @param line the encoded response line produced by ClientHandler
+     * @return the response frame including its length prefix
+     */
+    static byte[] encodeResponse(int id, byte[] line) {
+        int separator = 0;
+        while (separator < line.length && line[separator] != '|') {
+            separator++;
+        }
+        int status = statusCode(line, separator);
+        int payloadStart = Math.min(separator + 1, line.length);
+        int payloadEnd = line.length;
+        if (payloadEnd > payloadStart && line[payloadEnd - 1] == '\n') {
+            payloadEnd--;
+        }
+        int payloadLength = payloadEnd - payloadStart;
+
+        byte[] frame = new byte[4 + 4 + 1 + payloadLength];
+        writeInt(frame, 0, frame.length - 4);
+        writeInt(frame, 4, id);
+        frame[8] = (byte) status;
+        System.arraycopy(line, payloadStart, frame, 9, payloadLength);
+        return frame;
+    }
+
+    private static int statusCode(byte[] line, int length) {
+        for (int code = 0; code < STATUSES.length; code++) {
+            String status = STATUSES[code];
+            if (status.length() != length) {
+                continue;
+            }
+            boolean match = true;
+            for (int i = 0; i < length && match; i++) {
+                match = line[i] == status.charAt(i);
+            }
+            if (match) {
+                return code;
+            }
+        }
+        return 1; // ERROR
+    }
+
+    static int readInt(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xFF) << 24) | ((buffer[offset + 1] & 0xFF) << 16)
+                | ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+}
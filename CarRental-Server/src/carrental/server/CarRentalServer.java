@@ -7,17 +7,21 @@ package carrental.server;
 
 import java.io.*;
 import java.net.*;
+import java.util.concurrent.*;
 
 /**
  * CarRentalServer - Server Module
  * Main server bootstrap class for the Car Rental System.
  * Listens on port 5000 for incoming client connections.
- * Spawns a new ClientHandler thread for each connected client to handle requests concurrently.
+ * Runs a ClientHandler for each connected client to handle requests concurrently,
+ * either on a dedicated platform thread or on a virtual thread, or serves all clients
+ * from a single selector thread through NioServer (see ServerConfig.MODE).
+ * The number of simultaneously served clients is capped by ServerConfig.MAX_CONNECTIONS.
  *
  * @author Izaek Kisuule
  */
 public class CarRentalServer {
-    private static final int PORT = 5000;
+    private static final int PORT = ServerConfig.PORT;
     
     /**
      * Main entry point for the Car Rental Server.
@@ -31,7 +35,37 @@ public class CarRentalServer {
         System.out.println("========================================");
         System.out.println("Starting server on port " + PORT + "...");
         
-        try (ServerSocket serverSocket = new ServerSocket(PORT)) {
+        System.out.println("Connection mode: " + ServerConfig.MODE
+                + " (max " + ServerConfig.MAX_CONNECTIONS + " concurrent clients, "
+                + ServerConfig.WORKER_THREADS + " request workers)");
+        
+        if (ServerConfig.TRACE_PINNING) {
+            // Must be set before the first virtual thread is created
+            System.setProperty("jdk.tracePinnedThreads", "short");
+        }
+        
+        // Latency histograms are appended to ServerConfig.STATS_DUMP_FILE periodically
+        RequestStats.startDump();
+        
+        // Bounded stage shared by all connections; sheds load with BUSY responses
+        RequestExecutor requestExecutor = new RequestExecutor();
+        
+        if (ServerConfig.MODE_NIO.equals(ServerConfig.MODE)) {
+            try {
+                System.out.println("Server is running and waiting for clients...");
+                System.out.println("Press Ctrl+C to stop the server");
+                System.out.println("========================================\n");
+                new NioServer(PORT, requestExecutor).run();
+            } catch (IOException e) {
+                System.err.println("Server error: " + e.getMessage());
+            }
+            return;
+        }
+        
+        Semaphore connectionSlots = new Semaphore(ServerConfig.MAX_CONNECTIONS);
+        
+        try (ServerSocket serverSocket = new ServerSocket(PORT);
+             ExecutorService executor = createExecutor()) {
             System.out.println("Server is running and waiting for clients...");
             System.out.println("Press Ctrl+C to stop the server");
             System.out.println("========================================\n");
@@ -39,20 +73,56 @@ public class CarRentalServer {
             int clientCount = 0;
             
             while (true) {
+                // Wait for a free slot so the connection cap is never exceeded
+                connectionSlots.acquireUninterruptibly();
+                
                 // Wait for client connection
-                Socket clientSocket = serverSocket.accept();
+                Socket clientSocket;
+                try {
+                    clientSocket = serverSocket.accept();
+                } catch (IOException e) {
+                    connectionSlots.release();
+                    throw e;
+                }
                 clientCount++;
                 
                 System.out.println("Client #" + clientCount + " connected from: " + 
                                    clientSocket.getInetAddress().getHostAddress());
                 
-                // Handle each client in a separate thread
-                ClientHandler handler = new ClientHandler(clientSocket, clientCount);
-                handler.start();
+                // Handle each client on its own (platform or virtual) thread
+                ClientHandler handler = new ClientHandler(clientSocket, clientCount, requestExecutor);
+                try {
+                    executor.execute(() -> {
+                        try {
+                            handler.run();
+                        } finally {
+                            connectionSlots.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    connectionSlots.release();
+                    clientSocket.close();
+                }
             }
             
         } catch (IOException e) {
             System.err.println("Server error: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+    
+    /**
+     * Creates the executor that runs one ClientHandler per connection.
+     * Virtual mode keeps each connection on a cheap virtual thread, so idle clients
+     * only cost a small heap-allocated stack instead of a full platform thread.
+     * 
+     * @return executor that starts a new thread per submitted handler
+     */
+    private static ExecutorService createExecutor() {
+        if (ServerConfig.MODE_VIRTUAL.equals(ServerConfig.MODE)) {
+            ThreadFactory factory = Thread.ofVirtual().name("client-handler-", 1).factory();
+            return Executors.newThreadPerTaskExecutor(factory);
+        }
+        ThreadFactory factory = Thread.ofPlatform().name("client-handler-", 1).factory();
+        return Executors.newThreadPerTaskExecutor(factory);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Car Rental Server
+ * Settles a rental in one transaction
+ */
+package carrental.server;
+
+import java.sql.*;
+
+/**
+ * Checkout - Server Module
+ * Records the payment of a rental, completes the rental and makes its car available
+ * again, all in one transaction on one pooled connection. Used by the PAY action
+ * and by the server's Payment screen.
+ *
+ * The rental row is locked first (FOR UPDATE), which also yields its car, so the car
+ * is updated by key instead of through a join; the locks are released at commit,
+ * right after the last of the four statements.
+ *
+ * @author Izaek Kisuule
+ */
+final class Checkout {
+
+    private static final String LOCK_RENTAL_SQL = "SELECT car_id, status FROM rentals WHERE rental_id=? FOR UPDATE";
+    private static final String COMPLETE_RENTAL_SQL = "UPDATE rentals SET status='Completed' WHERE rental_id=?";
+    private static final String RELEASE_CAR_SQL = "UPDATE Cars SET status='Available' WHERE car_id=?";
+
+    private Checkout() {
+    }
+
+    /**
+     * Pays a rental. A rental that is missing or already Completed is refused, so a
+     * rental cannot be paid twice.
+     *
+     * @param rentalId the rental to settle
+     * @param amount the amount paid
+     * @param paymentDate the payment date
+     * @param method the payment method, e.g. "Cash"
+     * @return the payment_id of the new payment
+     * @throws SQLException if the rental cannot be paid or a statement fails; nothing is changed
+     */
+    static int pay(int rentalId, String amount, String paymentDate, String method) throws SQLException {
+        TableMetadata payments = TableMetadata.require("Payments");
+        int carId;
+        int paymentId;
+        try (Connection conn = DbConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                PreparedStatement lock = conn.prepareStatement(LOCK_RENTAL_SQL);
+                lock.setInt(1, rentalId);
+                try (ResultSet rs = lock.executeQuery()) {
+                    if (!rs.next()) {
+                        throw new SQLException("Rental not found");
+                    }
+                    if ("Completed".equals(rs.getString(2))) {
+                        throw new SQLException("Rental is already paid");
+                    }
+                    carId = rs.getInt(1);
+                }
+
+                paymentId = CrudEngine.insertReturningKey(conn, payments,
+                        new String[]{String.valueOf(rentalId), amount, paymentDate, method, "Completed"});
+
+                PreparedStatement rental = conn.prepareStatement(COMPLETE_RENTAL_SQL);
+                rental.setInt(1, rentalId);
+                rental.executeUpdate();
+
+                PreparedStatement car = conn.prepareStatement(RELEASE_CAR_SQL);
+                car.setInt(1, carId);
+                car.executeUpdate();
+
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+
+        // Only committed changes may invalidate the caches
+        ListCache.bump("Payments");
+        ClientHandler.invalidate("Rentals", rentalId);
+        ClientHandler.invalidate("Cars", carId);
+        return paymentId;
+    }
+}
@@ -8,69 +8,109 @@ package carrental.server;
 
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 /**
  * ClientHandler - Server Module
- * Processes client requests in a separate thread.
+ * Processes client requests on its own thread (platform or virtual, see CarRentalServer).
  * Implements the text-based protocol: ACTION|TABLE|DATA
- * Supported actions: ADD, UPDATE, DELETE, FIND, LIST, REPORT
+ * A request may be prefixed with a correlation id (#id|ACTION|TABLE|DATA); such
+ * requests run concurrently and their responses (#id|STATUS|...) may arrive in any order.
+ * Untagged requests keep the classic one-request-one-response behaviour.
+ * Supported actions: ADD, UPDATE, DELETE, FIND, LIST, STREAM, REPORT, BATCH, RENT, PAY, AUTH, AVAILABLE, STATS,
+ * and RECORD on binary connections
  * Handles database operations for all system tables.
  *
  * @author Izaek Kisuule
  */
-public class ClientHandler extends Thread {
+public class ClientHandler implements Runnable {
 
     private final Socket socket;
     private BufferedReader reader;
-    private PrintWriter writer;
+    private OutputStream out;
     private final int clientId;
+    private final RequestExecutor executor;
+    /** Separates the sub-requests of a BATCH request (ASCII record separator). */
+    static final String BATCH_SEPARATOR = "\u001E";
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Semaphore pipelineSlots = new Semaphore(ServerConfig.MAX_PIPELINED_PER_CLIENT);
+
+    /** Closes the sockets of clients that stop reading a STREAM (see writeFrame). */
+    private static final ScheduledExecutorService streamWatchdog = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "stream-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /** Set by a successful AUTH on this connection; null while nobody is logged in. */
+    private volatile SessionRegistry.Session session;
 
     /**
      * Constructs a new ClientHandler for the given socket connection.
      * 
      * @param socket the client socket connection
      * @param clientId unique identifier for this client
+     * @param executor bounded stage that runs this client's requests
      */
-    public ClientHandler(Socket socket, int clientId) {
+    public ClientHandler(Socket socket, int clientId, RequestExecutor executor) {
         this.socket = socket;
         this.clientId = clientId;
+        this.executor = executor;
     }
 
     /**
      * Main thread execution method.
-     * Sets up I/O streams, reads client requests, processes them, and sends responses.
+     * Sets up I/O streams, reads client requests, runs them on the shared
+     * RequestExecutor, and sends responses (BUSY|retry-after-ms when overloaded).
+     * Safe to run on a virtual thread: nothing here blocks inside a synchronized block
+     * (Connector/J 9.x guards its I/O with j.u.c locks), so a handler
+     * waiting on the socket or on MySQL unmounts instead of pinning its carrier thread.
+     * Start the server with -Dcarrental.server.tracePinning=true to verify this.
      */
     @Override
     public void run() {
         try {
             // Setup input stream
-            InputStreamReader stream = new InputStreamReader(socket.getInputStream());
+            InputStreamReader stream = new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8);
             reader = new BufferedReader(stream);
 
-            // Setup output stream
-            writer = new PrintWriter(socket.getOutputStream(), true);
+            // Setup output stream; responses arrive already encoded as UTF-8 lines
+            out = new BufferedOutputStream(socket.getOutputStream(), 8192);
 
             System.out.println("Client #" + clientId + " handler started");
 
             // Read client requests
             String request;
-            while ((request = reader.readLine()) != null) {
-                System.out.println("Client #" + clientId + " request: " + request);
-
-                String response = processRequest(request);
-                writer.println(response);
-
-                System.out.println("Client #" + clientId + " response: " + response);
+            while ((request = readRequestLine()) != null) {
+                dispatch(parseLine(request));
+                if (request.equals(BinaryProtocol.HELLO)) {
+                    // The client waits for the acknowledgement, so nothing is buffered in reader
+                    serveBinary(new DataInputStream(new BufferedInputStream(socket.getInputStream(), 8192)));
+                    break;
+                }
             }
+            // The client may have only shut down its output: let its pipelined requests answer first
+            pipelineSlots.acquire(ServerConfig.MAX_PIPELINED_PER_CLIENT);
 
         } catch (IOException e) {
             System.err.println("Client #" + clientId + " error: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Client #" + clientId + " error: " + e.getMessage());
         } finally {
             try {
                 if (socket != null) {
                     socket.close();
                 }
+                closeSession();
                 System.out.println("Client #" + clientId + " disconnected");
             } catch (IOException e) {
             }
@@ -78,1327 +118,1317 @@ public class ClientHandler extends Thread {
     }
 
     /**
-     * Processes a client request and returns the appropriate response.
-     * Request format: ACTION|TABLE|DATA
+     * Reads binary request frames after the client switched with HELLO|BINARY.
      * 
-     * @param request the client request string
-     * @return response string in format STATUS|MESSAGE or STATUS|DATA
+     * @param in the socket input
      */
-    private String processRequest(String request) {
-        try {
-            String[] parts = request.split("\\|", 3);
-
-            if (parts.length < 2) {
-                return "ERROR|Invalid request format";
+    private void serveBinary(DataInputStream in) throws IOException, InterruptedException {
+        while (true) {
+            // Wait for the first byte outside the event, so idle time between requests is not counted
+            in.mark(1);
+            if (in.read() < 0) {
+                return;
             }
-
-            String action = parts[0];
-            String table = parts[1];
-            String data = parts.length > 2 ? parts[2] : "";
-
-            switch (action) {
-                case "ADD":
-                    return handleAdd(table, data);
-                case "UPDATE":
-                    return handleUpdate(table, data);
-                case "DELETE":
-                    return handleDelete(table, data);
-                case "FIND":
-                    return handleFind(table, data);
-                case "LIST":
-                    return handleList(table);
-                case "REPORT":
-                    return handleReport(table, data);
-                default:
-                    return "ERROR|Unknown action: " + action;
+            in.reset();
+            ServerEvents.SocketRead event = new ServerEvents.SocketRead();
+            event.begin();
+            BinaryProtocol.Request request = BinaryProtocol.read(in);
+            if (request == null) {
+                return;
             }
+            event.clientId = clientId;
+            event.bytes = request.frameBytes;
+            event.commit();
+            dispatch(parseFrame(request));
+        }
+    }
 
-        } catch (Exception e) {
-            return "ERROR|" + e.getMessage();
+    /**
+     * Reads the next text request line and reports it as a SocketRead event. The event
+     * starts at the line's first character, so the client's idle time is not counted.
+     *
+     * @return the line, or null at end of stream
+     */
+    private String readRequestLine() throws IOException {
+        reader.mark(1);
+        if (reader.read() < 0) {
+            return null;
+        }
+        reader.reset();
+        ServerEvents.SocketRead event = new ServerEvents.SocketRead();
+        event.begin();
+        String line = reader.readLine();
+        if (line != null) {
+            event.clientId = clientId;
+            event.bytes = line.length() + 1;
+            event.commit();
         }
+        return line;
     }
-    
+
     /**
-     * Handles REPORT action requests.
-     * Delegates to ServerReportGenerator for PDF generation.
-     * 
-     * @param reportType the type of report (CUSTOMER, CAR, RENTAL, PAYMENT, MAINTENANCE)
-     * @param data additional data for the report (e.g., date range)
-     * @return success or error message with file path
+     * A request read from the socket (a text line or a binary frame), ready to run
+     * on the RequestExecutor. Shared by the blocking handler and NioServer.
      */
-    private String handleReport(String reportType, String data) {
-        try {
-            switch (reportType) {
-                case "CUSTOMER":
-                    return ServerReportGenerator.generateCustomerReport();
-                case "CAR":
-                    return ServerReportGenerator.generateCarReport();
-                case "RENTAL":
-                    String[] dates = data.split(",");
-                    if (dates.length != 2) {
-                        return "ERROR|Invalid date range format. Expected: startDate,endDate";
-                    }
-                    return ServerReportGenerator.generateRentalReport(dates[0], dates[1]);
-                case "PAYMENT":
-                    return ServerReportGenerator.generatePaymentReport();
-                case "MAINTENANCE":
-                    return ServerReportGenerator.generateMaintenanceReport();
-                default:
-                    return "ERROR|Unknown report type: " + reportType;
-            }
-        } catch (Exception e) {
-            return "ERROR|" + e.getMessage();
+    static final class Call {
+        final String action;
+        /** Untagged calls wait for every earlier request and run alone; tagged ones overlap. */
+        final boolean ordered;
+        /** Wraps every encoded response line for the wire (#id| prefix or binary frame). */
+        final UnaryOperator<byte[]> framing;
+        final Function<ResponseSink, byte[]> work;
+
+        Call(String action, boolean ordered, UnaryOperator<byte[]> framing, Function<ResponseSink, byte[]> work) {
+            this.action = action;
+            this.ordered = ordered;
+            this.framing = framing;
+            this.work = work;
         }
     }
 
-    // ==================== ADD OPERATIONS ====================
     /**
-     * Handles ADD action requests for all tables.
+     * Turns a text request line into a call. HELLO|BINARY is answered with
+     * SUCCESS|BINARY; the transport switches to frames after reading it.
      * 
-     * @param table the target table name
-     * @param data comma-separated field values
-     * @return success or error message
+     * @param line the client request line, possibly tagged with #id|
+     * @return the call
      */
-    private String handleAdd(String table, String data) {
-        try (Connection conn = DbConnection.getConnection()) {
-            String[] fields;
-            if (table.equals("Damages")) {
-                fields = data.split("\\|");
-            } else {
-                fields = data.split(",");
-            }
-            switch (table) {
-                case "Cars":
-                    return addCar(conn, fields);
-                case "Branches":
-                    return addBranch(conn, fields);
-                case "Insurance":
-                    return addInsurance(conn, fields);
-                case "Damages":
-                    return addDamage(conn, fields);
-                case "EmployeeAssignments":
-                    return addAssignment(conn, fields);
-                case "VehicleMaintenance":
-                    return addMaintenance(conn, fields);
-                case "Rentals":
-                    return addRental(conn, fields);
-                case "Payments":
-                    return addPayment(conn, fields);
-                case "Customers":
-                    return addCustomer(conn, fields);
-                case "Employees":
-                    return addEmployee(conn, fields);
-                default:
-                    return "ERROR|Unknown table: " + table;
-            }
-
-        } catch (Exception e) {
-            return "ERROR|" + e.getMessage();
+    Call parseLine(String line) {
+        if (line.equals(BinaryProtocol.HELLO)) {
+            return new Call("HELLO", true, UnaryOperator.identity(), sink -> toLine(BinaryProtocol.HELLO_ACK));
+        }
+        String tag = tagOf(line);
+        if (tag == null) {
+            return new Call(actionOf(line), true, UnaryOperator.identity(),
+                    sink -> withSession(() -> serve(line, sink)));
         }
+        String request = line.substring(tag.length() + 2);
+        return new Call(actionOf(request), false, response -> tagged(tag, response),
+                sink -> withSession(() -> serve(request, sink)));
     }
 
     /**
-     * Adds a new car record to the database.
+     * Turns a binary request frame into a call; its responses are sent as frames.
      * 
-     * @param conn database connection
-     * @param fields car data fields: make, model, year, license_plate, rental_rate, status, color, mileage
-     * @return success message
-     * @throws SQLException if database error occurs
+     * @param request the decoded frame
+     * @return the call
      */
-    private String addCar(Connection conn, String[] fields) throws SQLException {
-        String sql = "INSERT INTO Cars(make, model, year, license_plate, rental_rate, status, color, mileage) VALUES (?,?,?,?,?,?,?,?)";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setString(1, fields[0]);
-        pst.setString(2, fields[1]);
-        pst.setInt(3, Integer.parseInt(fields[2]));
-        pst.setString(4, fields[3]);
-        pst.setDouble(5, Double.parseDouble(fields[4]));
-        pst.setString(6, fields[5]);
-        pst.setString(7, fields[6]);
-        pst.setInt(8, Integer.parseInt(fields[7]));
-        pst.executeUpdate();
-        return "SUCCESS|Car added successfully";
+    Call parseFrame(BinaryProtocol.Request request) {
+        return new Call(request.action, request.id == 0,
+                response -> BinaryProtocol.encodeResponse(request.id, response),
+                sink -> withSession(() -> serve(request, sink)));
     }
 
     /**
-     * Adds a new branch record to the database.
+     * Runs a request on behalf of this connection's session, if it has one: the request
+     * is counted for the session, or refused with BUSY|retry-after-ms while the session
+     * is over its rate limit. An expired session no longer applies.
      * 
-     * @param conn database connection
-     * @param fields branch data fields: branch_name, address, city, phone_number, email, manager_id, status
-     * @return success message
-     * @throws SQLException if database error occurs
+     * @param work serves the request
+     * @return encoded response line
      */
-    private String addBranch(Connection conn, String[] fields) throws SQLException {
-        String sql = "INSERT INTO branches(branch_name, address, city, phone_number, email, manager_id, status) VALUES (?,?,?,?,?,?,?)";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setString(1, fields[0]);
-        pst.setString(2, fields[1]);
-        pst.setString(3, fields[2]);
-        pst.setString(4, fields[3].isEmpty() ? null : fields[3]);
-        pst.setString(5, fields[4].isEmpty() ? null : fields[4]);
-        if (fields[5].isEmpty()) {
-            pst.setNull(6, java.sql.Types.INTEGER);
-        } else {
-            pst.setInt(6, Integer.parseInt(fields[5]));
+    private byte[] withSession(Supplier<byte[]> work) {
+        SessionRegistry.Session current = session;
+        if (current == null || !SessionRegistry.live(current)) {
+            return work.get();
+        }
+        long retryAfter = current.admit();
+        if (retryAfter > 0) {
+            return toLine("BUSY|" + retryAfter);
         }
-        pst.setString(7, fields[6]);
-        pst.executeUpdate();
-        return "SUCCESS|Branch added successfully";
+        byte[] response = work.get();
+        current.record(response.length > 0 && response[0] == 'E');
+        return response;
     }
 
     /**
-     * Adds a new insurance record to the database.
-     * 
-     * @param conn database connection
-     * @param fields insurance data fields: car_id, policy_number, insurance_company, coverage_amount, premium_amount, start_date, end_date, status
-     * @return success message
-     * @throws SQLException if database error occurs
+     * Closes the session of this connection, if any; called when the client disconnects.
      */
-    private String addInsurance(Connection conn, String[] fields) throws SQLException {
-        String sql = "INSERT INTO insurance(car_id, policy_number, insurance_company, coverage_amount, premium_amount, start_date, end_date, status) VALUES (?,?,?,?,?,?,?,?)";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setInt(1, Integer.parseInt(fields[0]));
-        pst.setString(2, fields[1]);
-        pst.setString(3, fields[2]);
-        if (fields[3].isEmpty()) {
-            pst.setNull(4, java.sql.Types.DECIMAL);
-        } else {
-            pst.setDouble(4, Double.parseDouble(fields[3]));
-        }
-        pst.setDouble(5, Double.parseDouble(fields[4]));
-        pst.setDate(6, java.sql.Date.valueOf(fields[5]));
-        pst.setDate(7, java.sql.Date.valueOf(fields[6]));
-        pst.setString(8, fields[7]);
-        pst.executeUpdate();
-        return "SUCCESS|Insurance added successfully";
+    void closeSession() {
+        SessionRegistry.close(session, "closed");
+        session = null;
     }
 
     /**
-     * Adds a new damage record to the database.
-     * Handles pipe character replacement in description to avoid delimiter conflicts.
+     * Runs a call on the RequestExecutor. An ordered call first waits until all
+     * pipelined requests of this client have been answered, so its response cannot
+     * overtake theirs, and blocks the read loop until it is done. A tagged call returns
+     * to reading immediately and only blocks when this client already has
+     * MAX_PIPELINED_PER_CLIENT requests in progress.
      * 
-     * @param conn database connection
-     * @param fields damage data fields: rental_id, car_id, description, repair_cost, reported_date, status
-     * @return success message
-     * @throws SQLException if database error occurs
+     * @param call the parsed request
      */
-    private String addDamage(Connection conn, String[] fields) throws SQLException {
-        String sql = "INSERT INTO damages(rental_id, car_id, description, repair_cost, reported_date, status) VALUES (?,?,?,?,?,?)";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setInt(1, Integer.parseInt(fields[0]));
-        pst.setInt(2, Integer.parseInt(fields[1]));
-        pst.setString(3, fields[2].replace("¦", "|"));
-        if (fields[3].isEmpty()) {
-            pst.setNull(4, java.sql.Types.DECIMAL);
-        } else {
-            pst.setDouble(4, Double.parseDouble(fields[3]));
+    private void dispatch(Call call) throws IOException, InterruptedException {
+        ResponseSink sink = frame -> writeFrame(call.framing.apply(frame));
+        if (call.ordered) {
+            int permits = ServerConfig.MAX_PIPELINED_PER_CLIENT;
+            pipelineSlots.acquire(permits);
+            try {
+                write(call.framing.apply(executor.call(call.action, () -> call.work.apply(sink))));
+            } finally {
+                pipelineSlots.release(permits);
+            }
+            return;
+        }
+
+        pipelineSlots.acquire();
+        boolean admitted = executor.submit(call.action, () -> call.work.apply(sink), response -> {
+            try {
+                write(call.framing.apply(response));
+            } catch (IOException e) {
+                // The read loop notices the broken socket and closes it
+            } finally {
+                pipelineSlots.release();
+            }
+        });
+        if (!admitted) {
+            pipelineSlots.release();
+            write(call.framing.apply(toLine(executor.busyResponse())));
         }
-        pst.setDate(5, java.sql.Date.valueOf(fields[4]));
-        pst.setString(6, fields[5]);
-        pst.executeUpdate();
-        return "SUCCESS|Damage record added successfully";
     }
 
     /**
-     * Adds a new employee assignment record to the database.
+     * Writes one complete response line; responses of concurrent requests never interleave.
      * 
-     * @param conn database connection
-     * @param fields assignment data fields: employee_id, branch_id, assignment_type, assignment_date, description, status
-     * @return success message
-     * @throws SQLException if database error occurs
+     * @param response the encoded response line
      */
-    private String addAssignment(Connection conn, String[] fields) throws SQLException {
-        String sql = "INSERT INTO employeeassignments(employee_id, branch_id, assignment_type, assignment_date, description, status) VALUES (?,?,?,?,?,?)";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setInt(1, Integer.parseInt(fields[0]));
-        pst.setInt(2, Integer.parseInt(fields[1]));
-        pst.setString(3, fields[2]);
-        pst.setDate(4, java.sql.Date.valueOf(fields[3]));
-        pst.setString(5, fields[4]);
-        pst.setString(6, fields[5]);
-        pst.executeUpdate();
-        return "SUCCESS|Assignment added successfully";
+    private void write(byte[] response) throws IOException {
+        ServerEvents.SocketWrite event = new ServerEvents.SocketWrite();
+        event.begin();
+        writeLock.lock();
+        try {
+            out.write(response);
+            out.flush();
+        } finally {
+            writeLock.unlock();
+        }
+        event.clientId = clientId;
+        event.bytes = response.length;
+        event.commit();
     }
 
     /**
-     * Adds a new vehicle maintenance record to the database.
+     * Writes one intermediate STREAM frame. A blocking write has no deadline of its own,
+     * so a client that reads nothing for ServerConfig.LIST_STREAM_WRITE_TIMEOUT_MS has its
+     * socket closed: the write fails, the stream ends and its database connection goes
+     * back to the pool.
      * 
-     * @param conn database connection
-     * @param fields maintenance data fields: car_id, service_date, description, cost
-     * @return success message
-     * @throws SQLException if database error occurs
+     * @param frame the encoded frame
      */
-    private String addMaintenance(Connection conn, String[] fields) throws SQLException {
-        String sql = "INSERT INTO vehiclemaintenance(car_id, service_date, description, cost) VALUES (?,?,?,?)";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setInt(1, Integer.parseInt(fields[0]));
-        pst.setDate(2, java.sql.Date.valueOf(fields[1]));
-        pst.setString(3, fields[2]);
-        pst.setDouble(4, Double.parseDouble(fields[3]));
-        pst.executeUpdate();
-        return "SUCCESS|Maintenance record added successfully";
+    private void writeFrame(byte[] frame) throws IOException {
+        long timeout = ServerConfig.LIST_STREAM_WRITE_TIMEOUT_MS;
+        if (timeout <= 0) {
+            write(frame);
+            return;
+        }
+        ScheduledFuture<?> watchdog = streamWatchdog.schedule(() -> {
+            System.err.println("Client #" + clientId + " is not reading its stream, closing the connection");
+            try {
+                socket.close();
+            } catch (IOException e) {
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+        try {
+            write(frame);
+        } finally {
+            watchdog.cancel(false);
+        }
     }
 
     /**
-     * Adds a new rental record to the database.
+     * Extracts the correlation id of a pipelined request (#id|ACTION|TABLE|DATA).
      * 
-     * @param conn database connection
-     * @param fields rental data fields: customer_id, car_id, employee_id, start_date, end_date, total_amount, status
-     * @return success message
-     * @throws SQLException if database error occurs
+     * @param request the client request string
+     * @return the id, or null for an untagged request
      */
-    private String addRental(Connection conn, String[] fields) throws SQLException {
-        String sql = "INSERT INTO rentals(customer_id, car_id, employee_id, start_date, end_date, total_amount, status) VALUES (?,?,?,?,?,?,?)";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setInt(1, Integer.parseInt(fields[0]));
-        pst.setInt(2, Integer.parseInt(fields[1]));
-        pst.setInt(3, Integer.parseInt(fields[2]));
-        pst.setDate(4, java.sql.Date.valueOf(fields[3]));
-        pst.setDate(5, java.sql.Date.valueOf(fields[4]));
-        pst.setDouble(6, Double.parseDouble(fields[5]));
-        pst.setString(7, fields[6]);
-        pst.executeUpdate();
-        return "SUCCESS|Rental added successfully";
+    static String tagOf(String request) {
+        if (request.isEmpty() || request.charAt(0) != '#') {
+            return null;
+        }
+        int end = request.indexOf('|');
+        return end > 1 ? request.substring(1, end) : null;
     }
 
     /**
-     * Adds a new payment record to the database.
+     * Prefixes an encoded response line with the correlation id of its request.
      * 
-     * @param conn database connection
-     * @param fields payment data fields: rental_id, amount, payment_date, payment_method, payment_status
-     * @return success message
-     * @throws SQLException if database error occurs
+     * @param tag the correlation id
+     * @param response the encoded response line
+     * @return the encoded line #id|response
      */
-    private String addPayment(Connection conn, String[] fields) throws SQLException {
-        String sql = "INSERT INTO payments(rental_id, amount, payment_date, payment_method, payment_status) VALUES (?,?,?,?,?)";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setInt(1, Integer.parseInt(fields[0]));
-        pst.setDouble(2, Double.parseDouble(fields[1]));
-        pst.setDate(3, java.sql.Date.valueOf(fields[2]));
-        pst.setString(4, fields[3]);
-        pst.setString(5, fields[4]);
-        pst.executeUpdate();
-        return "SUCCESS|Payment added successfully";
+    static byte[] tagged(String tag, byte[] response) {
+        byte[] prefix = ("#" + tag + "|").getBytes(StandardCharsets.UTF_8);
+        byte[] line = new byte[prefix.length + response.length];
+        System.arraycopy(prefix, 0, line, 0, prefix.length);
+        System.arraycopy(response, 0, line, prefix.length, response.length);
+        return line;
     }
 
     /**
-     * Adds a new customer record to the database.
+     * Extracts the ACTION part of a request without splitting the whole line.
+     * Known actions are returned as the shared BinaryProtocol constant.
      * 
-     * @param conn database connection
-     * @param fields customer data fields: first_name, last_name, email, phone_number, address, license_number
-     * @return success message
-     * @throws SQLException if database error occurs
+     * @param request the client request string
+     * @return the action, or the whole request if it has no separator
      */
-    private String addCustomer(Connection conn, String[] fields) throws SQLException {
-        String sql = "INSERT INTO customers(first_name, last_name, email, phone_number, address, license_number) VALUES (?,?,?,?,?,?)";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setString(1, fields[0]);
-        pst.setString(2, fields[1]);
-        pst.setString(3, fields[2]);
-        pst.setString(4, fields[3].isEmpty() ? null : fields[3]);
-        pst.setString(5, fields[4].isEmpty() ? null : fields[4]);
-        pst.setString(6, fields[5].isEmpty() ? null : fields[5]);
-        pst.executeUpdate();
-        return "SUCCESS|Customer added successfully";
+    static String actionOf(String request) {
+        int end = request.indexOf('|');
+        if (end < 0) {
+            return request;
+        }
+        int opcode = RequestParser.lookup(BinaryProtocol.ACTIONS, request, 0, end);
+        return opcode != RequestParser.UNKNOWN ? BinaryProtocol.ACTIONS[opcode] : request.substring(0, end);
     }
 
     /**
-     * Adds a new employee record to the database.
+     * Encodes a response as a UTF-8 line ready to be written to the socket.
      * 
-     * @param conn database connection
-     * @param fields employee data fields: first_name, last_name, email, phone_number, address, password_hash
-     * @return success message
-     * @throws SQLException if database error occurs
+     * @param response response string in format STATUS|MESSAGE or STATUS|DATA
+     * @return the encoded bytes including the trailing newline
      */
-    private String addEmployee(Connection conn, String[] fields) throws SQLException {
-        String sql = "INSERT INTO employees_login(first_name, last_name, email, phone_number, address, password_hash) VALUES (?,?,?,?,?,?)";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setString(1, fields[0]);
-        pst.setString(2, fields[1]);
-        pst.setString(3, fields[2]);
-        pst.setString(4, fields[3].isEmpty() ? null : fields[3]);
-        pst.setString(5, fields[4].isEmpty() ? null : fields[4]);
-        pst.setString(6, fields[5]); // password_hash
-        pst.executeUpdate();
-        return "SUCCESS|Employee added successfully";
+    static byte[] toLine(String response) {
+        ServerEvents.ResponseEncode event = new ServerEvents.ResponseEncode();
+        event.begin();
+        byte[] line = (response + "\n").getBytes(StandardCharsets.UTF_8);
+        event.bytes = line.length;
+        event.commit();
+        return line;
     }
 
-    // ==================== UPDATE OPERATIONS ====================
     /**
-     * Handles UPDATE action requests for all tables.
+     * Receives the intermediate frames of a streamed response (STREAM) while the
+     * request is still running. Each transport writes them to its socket in order,
+     * before the final response line.
+     */
+    @FunctionalInterface
+    interface ResponseSink {
+        /**
+         * Writes one encoded frame; may block until the client has read earlier frames.
+         * 
+         * @param frame the encoded line
+         * @throws IOException if the client has gone away
+         */
+        void write(byte[] frame) throws IOException;
+    }
+
+    /**
+     * Processes a single request for this client and records it in the AccessLog
+     * and RequestStats.
+     * Used by both the blocking read loop and the NIO transport.
+     * Plain LIST requests are answered from ListCache when their tables are unchanged.
      * 
-     * @param table the target table name
-     * @param data comma-separated field values with ID as first field
-     * @return success or error message
+     * @param request the client request string
+     * @param sink receives the CHUNK frames of a STREAM request
+     * @return encoded response line in format STATUS|MESSAGE or STATUS|DATA
      */
-    private String handleUpdate(String table, String data) {
-        try (Connection conn = DbConnection.getConnection()) {
-            String[] fields;
-            if (table.equals("Damages")) {
-                fields = data.split("\\|");
-            } else {
-                fields = data.split(",");
-            }
+    byte[] serve(String request, ResponseSink sink) {
+        long start = RequestStats.begin();
+
+        if (request.startsWith("STREAM|")) {
+            int end = request.indexOf('|', 7);
+            String response = handleStream(end < 0 ? request.substring(7) : request.substring(7, end), sink);
+            byte[] bytes = toLine(response);
+            finished(request, response, bytes.length, start);
+            return bytes;
+        }
 
-            switch (table) {
-                case "Cars":
-                    return updateCar(conn, fields);
-                case "Branches":
-                    return updateBranch(conn, fields);
-                case "Insurance":
-                    return updateInsurance(conn, fields);
-                case "Damages":
-                    return updateDamage(conn, fields);
-                case "EmployeeAssignments":
-                    return updateAssignment(conn, fields);
-                case "VehicleMaintenance":
-                    return updateMaintenance(conn, fields);
-                case "Rentals":
-                    return updateRental(conn, fields);
-                case "Payments":
-                    return updatePayment(conn, fields);
-                case "Customers":
-                    return updateCustomer(conn, fields);
-                case "Employees":
-                    return updateEmployee(conn, fields);
-                default:
-                    return "ERROR|Unknown table: " + table;
+        String listTable = listTableOf(request);
+        if (listTable != null) {
+            long snapshot = ListCache.snapshot(listTable);
+            byte[] cached = ListCache.get(listTable, snapshot);
+            if (cached != null) {
+                finished(request, "[cached LIST, " + cached.length + " bytes]", cached.length, start);
+                return cached;
             }
-
-        } catch (Exception e) {
-            return "ERROR|" + e.getMessage();
+            String response = handleList(listTable);
+            byte[] bytes = toLine(response);
+            finished(request, response, bytes.length, start);
+            if (response.startsWith("SUCCESS|")) {
+                ListCache.put(listTable, snapshot, bytes);
+            }
+            return bytes;
         }
+
+        String response = processRequest(request);
+        byte[] bytes = toLine(response);
+        finished(request, response, bytes.length, start);
+        return bytes;
     }
 
     /**
-     * Updates an existing car record in the database.
-     * 
-     * @param conn database connection
-     * @param fields car data fields: car_id, make, model, year, license_plate, rental_rate, status, color, mileage
-     * @return success message
-     * @throws SQLException if database error occurs
+     * Records a served request in the AccessLog and in its RequestStats.
+     *
+     * @param request the request in text form
+     * @param response the response, or a short description of a binary or cached one
+     * @param responseBytes size of the encoded response
+     * @param start the value RequestStats.begin() returned when the request started
      */
-    private String updateCar(Connection conn, String[] fields) throws SQLException {
-        String sql = "UPDATE Cars SET make=?, model=?, year=?, license_plate=?, rental_rate=?, status=?, color=?, mileage=? WHERE car_id=?";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setString(1, fields[1]);
-        pst.setString(2, fields[2]);
-        pst.setInt(3, Integer.parseInt(fields[3]));
-        pst.setString(4, fields[4]);
-        pst.setDouble(5, Double.parseDouble(fields[5]));
-        pst.setString(6, fields[6]);
-        pst.setString(7, fields[7]);
-        pst.setInt(8, Integer.parseInt(fields[8]));
-        pst.setInt(9, Integer.parseInt(fields[0]));
-        pst.executeUpdate();
-        return "SUCCESS|Car updated successfully";
+    private void finished(String request, String response, int responseBytes, long start) {
+        AccessLog.log(clientId, redacted(request), response, start);
+        RequestStats.record(request, start, response.startsWith("ERROR|"), responseBytes);
     }
 
     /**
-     * Updates an existing branch record in the database.
+     * Returns a request as it may be written to the access log: the password of AUTH
+     * and the password columns of ADD and UPDATE (also inside a BATCH) are masked.
      * 
-     * @param conn database connection
-     * @param fields branch data fields: branch_id, branch_name, address, city, phone_number, email, manager_id, status
-     * @return success message
-     * @throws SQLException if database error occurs
+     * @param request the request in text form
+     * @return the request, or a copy with every password replaced by ***
      */
-    private String updateBranch(Connection conn, String[] fields) throws SQLException {
-        String sql = "UPDATE branches SET branch_name=?, address=?, city=?, phone_number=?, email=?, manager_id=?, status=? WHERE branch_id=?";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setString(1, fields[1]);
-        pst.setString(2, fields[2]);
-        pst.setString(3, fields[3]);
-        pst.setString(4, fields[4].isEmpty() ? null : fields[4]);
-        pst.setString(5, fields[5].isEmpty() ? null : fields[5]);
-        if (fields[6].isEmpty()) {
-            pst.setNull(6, java.sql.Types.INTEGER);
-        } else {
-            pst.setInt(6, Integer.parseInt(fields[6]));
+    static String redacted(String request) {
+        if (request.startsWith("AUTH|")) {
+            int comma = request.indexOf(',');
+            return comma < 0 ? request : request.substring(0, comma + 1) + "***";
+        }
+        if (request.startsWith("BATCH|")) {
+            String[] items = RequestParser.split(request, 6, BATCH_SEPARATOR.charAt(0));
+            for (int i = 0; i < items.length; i++) {
+                items[i] = redacted(items[i]);
+            }
+            return "BATCH|" + String.join(BATCH_SEPARATOR, items);
+        }
+        boolean add = request.startsWith("ADD|");
+        if (!add && !request.startsWith("UPDATE|")) {
+            return request;
+        }
+        int tableStart = request.indexOf('|') + 1;
+        int dataStart = request.indexOf('|', tableStart) + 1;
+        TableMetadata metadata = dataStart > 0
+                ? TableMetadata.forTable(request.substring(tableStart, dataStart - 1)) : null;
+        if (metadata == null || metadata.readColumns.length == metadata.columns.length) {
+            return request;
         }
-        pst.setString(7, fields[7]);
-        pst.setInt(8, Integer.parseInt(fields[0]));
-        pst.executeUpdate();
-        return "SUCCESS|Branch updated successfully";
+        String[] fields = RequestParser.split(request, dataStart, metadata.separator);
+        int offset = add ? 0 : 1;
+        int count = Math.min(fields.length, offset + metadata.columns.length);
+        StringJoiner masked = new StringJoiner(String.valueOf(metadata.separator));
+        for (int i = 0; i < count; i++) {
+            int column = i - offset;
+            masked.add(column >= 0 && metadata.columns[column].password ? "***" : fields[i]);
+        }
+        // Anything past the last column belongs to a password that contained the separator
+        return request.substring(0, dataStart) + masked;
     }
 
     /**
-     * Updates an existing insurance record in the database.
+     * Processes a request that arrived as a binary frame.
+     * ADD, UPDATE, RENT, PAY and AUTH use the frame's fields as they are, so values may contain
+     * commas, pipes or line breaks; every other action takes a single DATA value
+     * and is served exactly like its text form.
      * 
-     * @param conn database connection
-     * @param fields insurance data fields: insurance_id, car_id, policy_number, insurance_company, coverage_amount, premium_amount, start_date, end_date, status
-     * @return success message
-     * @throws SQLException if database error occurs
+     * @param request the decoded frame
+     * @param sink receives the CHUNK frames of a STREAM request
+     * @return encoded response line in format STATUS|MESSAGE or STATUS|DATA
      */
-    private String updateInsurance(Connection conn, String[] fields) throws SQLException {
-        String sql = "UPDATE insurance SET car_id=?, policy_number=?, insurance_company=?, coverage_amount=?, premium_amount=?, start_date=?, end_date=?, status=? WHERE insurance_id=?";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setInt(1, Integer.parseInt(fields[1]));
-        pst.setString(2, fields[2]);
-        pst.setString(3, fields[3]);
-        if (fields[4].isEmpty()) {
-            pst.setNull(4, java.sql.Types.DECIMAL);
-        } else {
-            pst.setDouble(4, Double.parseDouble(fields[4]));
-        }
-        pst.setDouble(5, Double.parseDouble(fields[5]));
-        pst.setDate(6, java.sql.Date.valueOf(fields[6]));
-        pst.setDate(7, java.sql.Date.valueOf(fields[7]));
-        pst.setString(8, fields[8]);
-        pst.setInt(9, Integer.parseInt(fields[0]));
-        pst.executeUpdate();
-        return "SUCCESS|Insurance updated successfully";
+    byte[] serve(BinaryProtocol.Request request, ResponseSink sink) {
+        switch (request.action) {
+            case "ADD":
+            case "UPDATE":
+            case "RENT":
+            case "PAY":
+                long start = RequestStats.begin();
+                String response;
+                if (request.action.equals("ADD")) {
+                    response = handleAdd(request.table, request.fields);
+                } else if (request.action.equals("UPDATE")) {
+                    response = handleUpdate(request.table, request.fields);
+                } else if (request.action.equals("RENT")) {
+                    response = request.table.equals("Rentals")
+                            ? handleRent(request.fields) : "ERROR|Unknown table: " + request.table;
+                } else {
+                    response = request.table.equals("Payments")
+                            ? handlePay(request.fields) : "ERROR|Unknown table: " + request.table;
+                }
+                byte[] bytes = toLine(response);
+                finished(request.action + "|" + request.table + "|" + String.join(",", request.fields),
+                        response, bytes.length, start);
+                return bytes;
+            case "RECORD":
+                long recordStart = RequestStats.begin();
+                byte[] record = handleRecord(request.table, request.data());
+                finished("RECORD|" + request.table + "|" + request.data(),
+                        record.length > 0 && record[0] == 'E' ? new String(record, StandardCharsets.UTF_8).trim()
+                                : "[RECORD, " + record.length + " bytes]", record.length, recordStart);
+                return record;
+            case "BATCH":
+                // Every field is one text sub-request
+                return serve("BATCH|" + String.join(BATCH_SEPARATOR, request.fields), sink);
+            case "AUTH":
+                long authStart = RequestStats.begin();
+                String auth = request.fields.length < 2 ? "ERROR|AUTH expects email,password"
+                        : handleAuth(request.fields[0], request.fields[1]);
+                byte[] authBytes = toLine(auth);
+                finished("AUTH|" + (request.fields.length > 0 ? request.fields[0] : ""), auth,
+                        authBytes.length, authStart);
+                return authBytes;
+            case "AVAILABLE":
+                // Start and end date may also travel as two fields
+                return serve("AVAILABLE|" + String.join(",", request.fields), sink);
+            case "REPORT":
+                // Report type and date range travel as the first two fields
+                return serve("REPORT|" + request.data() + "|"
+                        + (request.fields.length > 1 ? request.fields[1] : ""), sink);
+            default:
+                return serve(request.action + "|" + request.table + "|" + request.data(), sink);
+        }
     }
 
     /**
-     * Updates an existing damage record in the database.
-     * Handles pipe character replacement in description to avoid delimiter conflicts.
+     * Recognises a plain LIST request ("LIST|Cars" or "LIST|Cars|").
      * 
-     * @param conn database connection
-     * @param fields damage data fields: damage_id, rental_id, car_id, description, repair_cost, reported_date, status
-     * @return success message
-     * @throws SQLException if database error occurs
+     * @param request the client request string
+     * @return the table name, or null for any other request
      */
-    private String updateDamage(Connection conn, String[] fields) throws SQLException {
-        String sql = "UPDATE damages SET rental_id=?, car_id=?, description=?, repair_cost=?, reported_date=?, status=? WHERE damage_id=?";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setInt(1, Integer.parseInt(fields[1]));
-        pst.setInt(2, Integer.parseInt(fields[2]));
-        pst.setString(3, fields[3].replace("¦", "|"));
-        if (fields[4].isEmpty()) {
-            pst.setNull(4, java.sql.Types.DECIMAL);
-        } else {
-            pst.setDouble(4, Double.parseDouble(fields[4]));
+    private static String listTableOf(String request) {
+        if (!request.startsWith("LIST|")) {
+            return null;
         }
-        pst.setDate(5, java.sql.Date.valueOf(fields[5]));
-        pst.setString(6, fields[6]);
-        pst.setInt(7, Integer.parseInt(fields[0]));
-        pst.executeUpdate();
-        return "SUCCESS|Damage updated successfully";
+        int end = request.indexOf('|', 5);
+        if (end < 0) {
+            return request.substring(5);
+        }
+        return end == request.length() - 1 ? request.substring(5, end) : null;
     }
 
     /**
-     * Updates an existing employee assignment record in the database.
-     * 
-     * @param conn database connection
-     * @param fields assignment data fields: assignment_id, employee_id, branch_id, assignment_type, assignment_date, description, status
-     * @return success message
-     * @throws SQLException if database error occurs
+     * Handles one parsed request; an entry of the dispatch table.
      */
-    private String updateAssignment(Connection conn, String[] fields) throws SQLException {
-        String sql = "UPDATE employeeassignments SET employee_id=?, branch_id=?, assignment_type=?, assignment_date=?, description=?, status=? WHERE assignment_id=?";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setInt(1, Integer.parseInt(fields[1]));
-        pst.setInt(2, Integer.parseInt(fields[2]));
-        pst.setString(3, fields[3]);
-        pst.setDate(4, java.sql.Date.valueOf(fields[4]));
-        pst.setString(5, fields[5]);
-        pst.setString(6, fields[6]);
-        pst.setInt(7, Integer.parseInt(fields[0]));
-        pst.executeUpdate();
-        return "SUCCESS|Assignment updated successfully";
+    @FunctionalInterface
+    private interface Handler {
+        String handle(ClientHandler client, RequestParser request) throws Exception;
     }
 
     /**
-     * Updates an existing vehicle maintenance record in the database.
-     * 
-     * @param conn database connection
-     * @param fields maintenance data fields: maintenance_id, car_id, service_date, description, cost
-     * @return success message
-     * @throws SQLException if database error occurs
+     * Dispatch table indexed by [action opcode][table id] (BinaryProtocol numbering).
+     * Column 0 is used when TABLE is not a known table. A null row means the action
+     * is not accepted as text; a null entry in a row means the table is unknown.
      */
-    private String updateMaintenance(Connection conn, String[] fields) throws SQLException {
-        String sql = "UPDATE vehiclemaintenance SET car_id=?, service_date=?, description=?, cost=? WHERE maintenance_id=?";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setInt(1, Integer.parseInt(fields[1]));
-        pst.setDate(2, java.sql.Date.valueOf(fields[2]));
-        pst.setString(3, fields[3]);
-        pst.setDouble(4, Double.parseDouble(fields[4]));
-        pst.setInt(5, Integer.parseInt(fields[0]));
-        pst.executeUpdate();
-        return "SUCCESS|Maintenance updated successfully";
+    private static final Handler[][] dispatch = new Handler[BinaryProtocol.ACTIONS.length][];
+
+    static {
+        register("ADD", true, (client, r) -> client.handleAdd(r.tableName(), r.fields()));
+        register("UPDATE", true, (client, r) -> client.handleUpdate(r.tableName(), r.fields()));
+        register("DELETE", true, (client, r) -> client.handleDelete(r.tableName(), r.dataInt()));
+        register("FIND", true, (client, r) -> client.handleFind(r.tableName(), r.dataInt()));
+        register("LIST", true, (client, r) -> r.hasData()
+                ? client.handleListPage(r.tableName(), r.data()) : client.handleList(r.tableName()));
+        register("RECORD", false, (client, r) -> "ERROR|RECORD needs a binary connection (HELLO|BINARY)");
+        // The TABLE part of REPORT is the report type, the rest of BATCH is its first sub-request
+        register("REPORT", false, (client, r) -> client.handleReport(r.tableName(), r.data()));
+        register("BATCH", false, (client, r) -> client.handleBatch(r.afterAction()));
+        register("STATS", false, (client, r) -> "SUCCESS|" + RequestStats.snapshot());
+        register("RENT", "Rentals", (client, r) -> client.handleRent(r.fields()));
+        register("PAY", "Payments", (client, r) -> client.handlePay(r.fields()));
+        // AVAILABLE|start,end: the dates are the TABLE part
+        register("AVAILABLE", false, (client, r) -> client.handleAvailable(r.hasData() ? r.data() : r.tableName()));
+        // The password may contain ',' or '|', so only the first ',' separates it from the email
+        register("AUTH", false, (client, r) -> {
+            String credentials = r.afterAction();
+            int comma = credentials.indexOf(',');
+            return comma < 0 ? "ERROR|AUTH expects email,password"
+                    : client.handleAuth(credentials.substring(0, comma), credentials.substring(comma + 1));
+        });
     }
 
-    /**
-     * Updates an existing rental record in the database.
-     * 
-     * @param conn database connection
-     * @param fields rental data fields: rental_id, customer_id, car_id, employee_id, start_date, end_date, total_amount, status
-     * @return success message
-     * @throws SQLException if database error occurs
-     */
-    private String updateRental(Connection conn, String[] fields) throws SQLException {
-        String sql = "UPDATE rentals SET customer_id=?, car_id=?, employee_id=?, start_date=?, end_date=?, total_amount=?, status=? WHERE rental_id=?";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setInt(1, Integer.parseInt(fields[1]));
-        pst.setInt(2, Integer.parseInt(fields[2]));
-        pst.setInt(3, Integer.parseInt(fields[3]));
-        pst.setDate(4, java.sql.Date.valueOf(fields[4]));
-        pst.setDate(5, java.sql.Date.valueOf(fields[5]));
-        pst.setDouble(6, Double.parseDouble(fields[6]));
-        pst.setString(7, fields[7]);
-        pst.setInt(8, Integer.parseInt(fields[0]));
-        pst.executeUpdate();
-        return "SUCCESS|Rental updated successfully";
+    private static void register(String action, String table, Handler handler) {
+        Handler[] row = new Handler[BinaryProtocol.TABLES.length];
+        row[RequestParser.lookup(BinaryProtocol.TABLES, table, 0, table.length())] = handler;
+        dispatch[RequestParser.lookup(BinaryProtocol.ACTIONS, action, 0, action.length())] = row;
     }
 
-    /**
-     * Updates an existing payment record in the database.
-     * 
-     * @param conn database connection
-     * @param fields payment data fields: payment_id, rental_id, amount, payment_date, payment_method, payment_status
-     * @return success message
-     * @throws SQLException if database error occurs
-     */
-    private String updatePayment(Connection conn, String[] fields) throws SQLException {
-        String sql = "UPDATE payments SET rental_id=?, amount=?, payment_date=?, payment_method=?, payment_status=? WHERE payment_id=?";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setInt(1, Integer.parseInt(fields[1]));
-        pst.setDouble(2, Double.parseDouble(fields[2]));
-        pst.setDate(3, java.sql.Date.valueOf(fields[3]));
-        pst.setString(4, fields[4]);
-        pst.setString(5, fields[5]);
-        pst.setInt(6, Integer.parseInt(fields[0]));
-        pst.executeUpdate();
-        return "SUCCESS|Payment updated successfully";
+    private static void register(String action, boolean perTable, Handler handler) {
+        Handler[] row = new Handler[BinaryProtocol.TABLES.length];
+        // Table-independent actions also fill column 0, so they accept any TABLE part
+        for (int table = perTable ? 1 : 0; table < row.length; table++) {
+            row[table] = handler;
+        }
+        dispatch[RequestParser.lookup(BinaryProtocol.ACTIONS, action, 0, action.length())] = row;
     }
 
     /**
-     * Updates an existing customer record in the database.
+     * Processes a client request and returns the appropriate response.
+     * Request format: ACTION|TABLE|DATA
+     * The line is parsed in place by this thread's RequestParser and dispatched
+     * through the [action][table] table; no regular expressions are involved.
      * 
-     * @param conn database connection
-     * @param fields customer data fields: customer_id, first_name, last_name, email, phone_number, address, license_number
-     * @return success message
-     * @throws SQLException if database error occurs
+     * @param request the client request string
+     * @return response string in format STATUS|MESSAGE or STATUS|DATA
      */
-    private String updateCustomer(Connection conn, String[] fields) throws SQLException {
-        String sql = "UPDATE customers SET first_name=?, last_name=?, email=?, phone_number=?, address=?, license_number=? WHERE customer_id=?";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setString(1, fields[1]);
-        pst.setString(2, fields[2]);
-        pst.setString(3, fields[3]);
-        pst.setString(4, fields[4].isEmpty() ? null : fields[4]);
-        pst.setString(5, fields[5].isEmpty() ? null : fields[5]);
-        pst.setString(6, fields[6].isEmpty() ? null : fields[6]);
-        pst.setInt(7, Integer.parseInt(fields[0]));
-        pst.executeUpdate();
-        return "SUCCESS|Customer updated successfully";
-    }
+    String processRequest(String request) {
+        try {
+            RequestParser parser = RequestParser.get();
+            ServerEvents.RequestParse event = new ServerEvents.RequestParse();
+            event.begin();
+            boolean parsed = parser.parse(request);
+            event.end();
+            if (event.shouldCommit()) {
+                event.action = parser.actionName();
+                event.table = parsed ? parser.tableName() : null;
+                event.commit();
+            }
+            if (!parsed) {
+                return "ERROR|Invalid request format";
+            }
+
+            Handler[] row = parser.action() == RequestParser.UNKNOWN ? null : dispatch[parser.action()];
+            if (row == null) {
+                return "ERROR|Unknown action: " + parser.actionName();
+            }
+            Handler handler = row[parser.table() == RequestParser.UNKNOWN ? 0 : parser.table()];
+            if (handler == null) {
+                return "ERROR|Unknown table: " + parser.tableName();
+            }
+            return handler.handle(this, parser);
 
+        } catch (Exception e) {
+            return "ERROR|" + e.getMessage();
+        }
+    }
+    
     /**
-     * Updates an existing employee record in the database.
+     * Handles REPORT action requests.
+     * Delegates to ServerReportGenerator for PDF generation.
      * 
-     * @param conn database connection
-     * @param fields employee data fields: employee_id, first_name, last_name, email, phone_number, address, password_hash
-     * @return success message
-     * @throws SQLException if database error occurs
+     * @param reportType the type of report (CUSTOMER, CAR, RENTAL, PAYMENT, MAINTENANCE)
+     * @param data additional data for the report (e.g., date range)
+     * @return success or error message with file path
      */
-    private String updateEmployee(Connection conn, String[] fields) throws SQLException {
-        String sql = "UPDATE employees_login SET first_name=?, last_name=?, email=?, phone_number=?, address=?, password_hash=? WHERE employee_id=?";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setString(1, fields[1]);
-        pst.setString(2, fields[2]);
-        pst.setString(3, fields[3]);
-        pst.setString(4, fields[4].isEmpty() ? null : fields[4]);
-        pst.setString(5, fields[5].isEmpty() ? null : fields[5]);
-        pst.setString(6, fields[6]);
-        pst.setInt(7, Integer.parseInt(fields[0]));
-        pst.executeUpdate();
-        return "SUCCESS|Employee updated successfully";
+    private String handleReport(String reportType, String data) {
+        try {
+            switch (reportType) {
+                case "CUSTOMER":
+                    return ServerReportGenerator.generateCustomerReport();
+                case "CAR":
+                    return ServerReportGenerator.generateCarReport();
+                case "RENTAL":
+                    String[] dates = data.split(",");
+                    if (dates.length != 2) {
+                        return "ERROR|Invalid date range format. Expected: startDate,endDate";
+                    }
+                    return ServerReportGenerator.generateRentalReport(dates[0], dates[1]);
+                case "PAYMENT":
+                    return ServerReportGenerator.generatePaymentReport();
+                case "MAINTENANCE":
+                    return ServerReportGenerator.generateMaintenanceReport();
+                default:
+                    return "ERROR|Unknown report type: " + reportType;
+            }
+        } catch (Exception e) {
+            return "ERROR|" + e.getMessage();
+        }
     }
 
-    // ==================== DELETE OPERATIONS ====================
+    // ==================== ADD / UPDATE / DELETE OPERATIONS ====================
     /**
-     * Handles DELETE action requests for all tables.
+     * Handles ADD action requests for all tables.
      * 
      * @param table the target table name
-     * @param data the ID of the record to delete
+     * @param fields the field values in TableMetadata column order
      * @return success or error message
      */
-    private String handleDelete(String table, String data) {
+    private String handleAdd(String table, String[] fields) {
+        TableMetadata metadata = TableMetadata.forTable(table);
+        if (metadata == null) {
+            return "ERROR|Unknown table: " + table;
+        }
+        boolean indexed = table.equals("Rentals") || table.equals("Cars");
+        int id = -1;
+        String response;
         try (Connection conn = DbConnection.getConnection()) {
-            int id = Integer.parseInt(data);
-
-            String sql;
-            switch (table) {
-                case "Cars":
-                    sql = "DELETE FROM Cars WHERE car_id=?";
-                    break;
-                case "Branches":
-                    sql = "DELETE FROM branches WHERE branch_id=?";
-                    break;
-                case "Insurance":
-                    sql = "DELETE FROM insurance WHERE insurance_id=?";
-                    break;
-                case "Damages":
-                    sql = "DELETE FROM damages WHERE damage_id=?";
-                    break;
-                case "EmployeeAssignments":
-                    sql = "DELETE FROM employeeassignments WHERE assignment_id=?";
-                    break;
-                case "VehicleMaintenance":
-                    sql = "DELETE FROM vehiclemaintenance WHERE maintenance_id=?";
-                    break;
-                case "Rentals":
-                    sql = "DELETE FROM rentals WHERE rental_id=?";
-                    break;
-                case "Payments":
-                    sql = "DELETE FROM payments WHERE payment_id=?";
-                    break;
-                case "Customers":
-                    sql = "DELETE FROM customers WHERE customer_id=?";
-                    break;
-                case "Employees":
-                    sql = "DELETE FROM employees_login WHERE employee_id=?";
-                    break;
-                default:
-                    return "ERROR|Unknown table: " + table;
+            if (indexed) {
+                // The AvailabilityIndex needs the new key
+                id = CrudEngine.insertReturningKey(conn, metadata, fields);
+                response = "SUCCESS|" + metadata.addedMessage;
+            } else {
+                response = CrudEngine.insert(conn, metadata, fields);
             }
-
-            PreparedStatement pst = conn.prepareStatement(sql);
-            pst.setInt(1, id);
-            pst.executeUpdate();
-            return "SUCCESS|Record deleted successfully";
-
         } catch (Exception e) {
             return "ERROR|" + e.getMessage();
         }
+
+        // Caches are updated once the connection is back in the pool: the
+        // AvailabilityIndex borrows one of its own to re-read a rental
+        if (!indexed) {
+            ListCache.bump(table);
+        } else {
+            if (table.equals("Cars")) {
+                AvailabilityIndex.carAdded(id);
+            }
+            invalidate(table, id);
+        }
+        return response;
     }
 
-    // ==================== FIND OPERATIONS ====================
     /**
-     * Handles FIND action requests for all tables.
+     * Handles UPDATE action requests for all tables.
      * 
      * @param table the target table name
-     * @param data the ID of the record to find
-     * @return success with record data or error message
+     * @param fields the field values with ID as first field
+     * @return success or error message
      */
-    private String handleFind(String table, String data) {
+    private String handleUpdate(String table, String[] fields) {
+        TableMetadata metadata = TableMetadata.forTable(table);
+        if (metadata == null) {
+            return "ERROR|Unknown table: " + table;
+        }
+        String response;
         try (Connection conn = DbConnection.getConnection()) {
-            int id = Integer.parseInt(data);
-
-            switch (table) {
-                case "Cars":
-                    return findCar(conn, id);
-                case "Branches":
-                    return findBranch(conn, id);
-                case "Insurance":
-                    return findInsurance(conn, id);
-                case "Damages":
-                    return findDamage(conn, id);
-                case "EmployeeAssignments":
-                    return findAssignment(conn, id);
-                case "VehicleMaintenance":
-                    return findMaintenance(conn, id);
-                case "Rentals":
-                    return findRental(conn, id);
-                case "Payments":
-                    return findPayment(conn, id);
-                case "Customers":
-                    return findCustomer(conn, id);
-                case "Employees":
-                    return findEmployee(conn, id);
-                default:
-                    return "ERROR|Unknown table: " + table;
-            }
-
+            response = CrudEngine.update(conn, metadata, fields);
         } catch (Exception e) {
             return "ERROR|" + e.getMessage();
         }
+
+        // The row changed: drop it from the FIND cache before answering
+        invalidate(table, Integer.parseInt(fields[0]));
+        return response;
     }
 
     /**
-     * Finds a car record by ID.
+     * Handles DELETE action requests for all tables.
      * 
-     * @param conn database connection
-     * @param id the car ID to search for
-     * @return success with car data or error message
-     * @throws SQLException if database error occurs
+     * @param table the target table name
+     * @param id the ID of the record to delete
+     * @return success or error message
      */
-    private String findCar(Connection conn, int id) throws SQLException {
-        String sql = "SELECT * FROM Cars WHERE car_id=?";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setInt(1, id);
-        ResultSet rs = pst.executeQuery();
-
-        if (rs.next()) {
-            return "SUCCESS|" + rs.getString("make") + ","
-                    + rs.getString("model") + ","
-                    + rs.getInt("year") + ","
-                    + rs.getString("license_plate") + ","
-                    + rs.getDouble("rental_rate") + ","
-                    + rs.getString("status") + ","
-                    + rs.getString("color") + ","
-                    + rs.getInt("mileage");
-        }
-        return "ERROR|Car not found";
+    private String handleDelete(String table, int id) {
+        TableMetadata metadata = TableMetadata.forTable(table);
+        if (metadata == null) {
+            return "ERROR|Unknown table: " + table;
+        }
+        try (Connection conn = DbConnection.getConnection()) {
+            CrudEngine.delete(conn, metadata, id);
+        } catch (Exception e) {
+            return "ERROR|" + e.getMessage();
+        }
+
+        if (table.equals("Cars")) {
+            AvailabilityIndex.carDeleted(id);
+        }
+        invalidate(table, id);
+        return "SUCCESS|Record deleted successfully";
     }
 
+    // ==================== RENT ====================
+    /** Serializes RENT per car_id, so rentals of different cars never wait for each other. */
+    private static final StripedLocks carLocks = new StripedLocks(ServerConfig.RENT_LOCK_STRIPES);
+
+    private static final String RENT_CHECK_SQL = "SELECT status FROM Cars WHERE car_id=? FOR UPDATE";
+    private static final String RENT_MARK_SQL = "UPDATE Cars SET status='Rented' WHERE car_id=?";
+
     /**
-     * Finds a branch record by ID.
+     * Handles RENT requests: checks that the car is Available, adds the rental with
+     * status Active and marks the car Rented, in one transaction. Requests for the
+     * same car are serialized by its stripe of carLocks, so two clients can never
+     * both see the car as Available; the row lock of FOR UPDATE also protects
+     * against writers outside this server.
+     * Request format: RENT|Rentals|customer_id,car_id,employee_id,start_date,end_date,total_amount
      * 
-     * @param conn database connection
-     * @param id the branch ID to search for
-     * @return success with branch data or error message
-     * @throws SQLException if database error occurs
+     * @param fields the rental fields
+     * @return success or error message
      */
-    private String findBranch(Connection conn, int id) throws SQLException {
-        String sql = "SELECT * FROM branches WHERE branch_id=?";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setInt(1, id);
-        ResultSet rs = pst.executeQuery();
-
-        if (rs.next()) {
-            String phone = rs.getString("phone_number");
-            String email = rs.getString("email");
-            int managerId = rs.getInt("manager_id");
-            return "SUCCESS|" + rs.getString("branch_name") + ","
-                    + rs.getString("address") + ","
-                    + rs.getString("city") + ","
-                    + (phone != null ? phone : "") + ","
-                    + (email != null ? email : "") + ","
-                    + (rs.wasNull() ? "" : managerId) + ","
-                    + rs.getString("status");
-        }
-        return "ERROR|Branch not found";
+    private String handleRent(String[] fields) {
+        if (fields.length < 6) {
+            return "ERROR|RENT expects customer_id,car_id,employee_id,start_date,end_date,total_amount";
+        }
+        int carId;
+        try {
+            carId = Integer.parseInt(fields[1]);
+        } catch (NumberFormatException e) {
+            return "ERROR|" + e.getMessage();
+        }
+        String[] rental = Arrays.copyOf(fields, 7);
+        rental[6] = "Active";
+
+        int rentalId;
+        ReentrantLock lock = carLocks.forKey(carId);
+        lock.lock();
+        try (Connection conn = DbConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                PreparedStatement check = conn.prepareStatement(RENT_CHECK_SQL);
+                check.setInt(1, carId);
+                try (ResultSet rs = check.executeQuery()) {
+                    if (!rs.next()) {
+                        conn.rollback();
+                        return "ERROR|Car not found";
+                    }
+                    String status = rs.getString(1);
+                    if (!"Available".equals(status)) {
+                        conn.rollback();
+                        return "ERROR|Car is not available (" + status + ")";
+                    }
+                }
+                rentalId = CrudEngine.insertReturningKey(conn, TableMetadata.require("Rentals"), rental);
+                PreparedStatement mark = conn.prepareStatement(RENT_MARK_SQL);
+                mark.setInt(1, carId);
+                mark.executeUpdate();
+                conn.commit();
+            } catch (Exception e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (Exception e) {
+            return "ERROR|" + e.getMessage();
+        } finally {
+            lock.unlock();
+        }
+
+        // Only committed changes may invalidate the caches
+        invalidate("Rentals", rentalId);
+        invalidate("Cars", carId);
+        return "SUCCESS|Car rented successfully";
     }
 
+    // ==================== PAY ====================
     /**
-     * Finds an insurance record by ID.
+     * Handles PAY requests: records the payment, completes the rental and makes the
+     * car available again in one transaction (see Checkout).
+     * Request format: PAY|Payments|rental_id,amount,payment_date,payment_method
      * 
-     * @param conn database connection
-     * @param id the insurance ID to search for
-     * @return success with insurance data or error message
-     * @throws SQLException if database error occurs
+     * @param fields the payment fields
+     * @return SUCCESS|payment_id of the new payment, or an error message
      */
-    private String findInsurance(Connection conn, int id) throws SQLException {
-        String sql = "SELECT * FROM insurance WHERE insurance_id=?";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setInt(1, id);
-        ResultSet rs = pst.executeQuery();
-
-        if (rs.next()) {
-            double coverage = rs.getDouble("coverage_amount");
-            return "SUCCESS|" + rs.getInt("car_id") + ","
-                    + rs.getString("policy_number") + ","
-                    + rs.getString("insurance_company") + ","
-                    + (rs.wasNull() ? "" : coverage) + ","
-                    + rs.getDouble("premium_amount") + ","
-                    + rs.getDate("start_date") + ","
-                    + rs.getDate("end_date") + ","
-                    + rs.getString("status");
-        }
-        return "ERROR|Insurance not found";
+    private String handlePay(String[] fields) {
+        if (fields.length < 4) {
+            return "ERROR|PAY expects rental_id,amount,payment_date,payment_method";
+        }
+        try {
+            return "SUCCESS|" + Checkout.pay(Integer.parseInt(fields[0]), fields[1], fields[2], fields[3]);
+        } catch (Exception e) {
+            return "ERROR|" + e.getMessage();
+        }
     }
 
+    // ==================== AVAILABLE ====================
     /**
-     * Finds a damage record by ID.
-     * Handles pipe character replacement in description to avoid delimiter conflicts.
+     * Handles AVAILABLE requests: lists the cars without an open rental on any day
+     * of a date range, from the in-memory AvailabilityIndex.
+     * Request format: AVAILABLE|start_date,end_date (yyyy-mm-dd, both included)
      * 
-     * @param conn database connection
-     * @param id the damage ID to search for
-     * @return success with damage data using pipe delimiters or error message
-     * @throws SQLException if database error occurs
+     * @param range the start and end date separated by a comma
+     * @return SUCCESS|car_id;car_id;... (empty if no car is free), or an error message
      */
-    private String findDamage(Connection conn, int id) throws SQLException {
-        String sql = "SELECT * FROM damages WHERE damage_id=?";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setInt(1, id);
-        ResultSet rs = pst.executeQuery();
-
-        if (rs.next()) {
-            int rentalId = rs.getInt("rental_id");
-            int carId = rs.getInt("car_id");
-            String description = rs.getString("description");
-
-            // Check for null IMMEDIATELY after reading
-            double cost = rs.getDouble("repair_cost");
-            boolean costWasNull = rs.wasNull();
-
-            java.sql.Date reportedDate = rs.getDate("reported_date");
-            String status = rs.getString("status");
-
-            // Replace pipe characters in description to avoid delimiter conflicts
-            if (description != null) {
-                description = description.replace("|", "¦");
+    private String handleAvailable(String range) {
+        int comma = range.indexOf(',');
+        if (comma < 0) {
+            return "ERROR|AVAILABLE expects start_date,end_date";
+        }
+        try {
+            LocalDate start = LocalDate.parse(range.substring(0, comma).trim());
+            LocalDate end = LocalDate.parse(range.substring(comma + 1).trim());
+            if (end.isBefore(start)) {
+                return "ERROR|End date is before start date";
             }
-
-            // Build response with pipe delimiters
-            return "SUCCESS|" + rentalId + "|"
-                    + carId + "|"
-                    + (description != null ? description : "") + "|"
-                    + (costWasNull ? "" : cost) + "|"
-                    + reportedDate + "|"
-                    + status;
+            return "SUCCESS|" + AvailabilityIndex.available(start, end);
+        } catch (Exception e) {
+            return "ERROR|" + e.getMessage();
         }
-        return "ERROR|Damage not found";
     }
 
+    // ==================== AUTH ====================
     /**
-     * Finds an employee assignment record by ID.
+     * Handles AUTH requests: checks the employee's credentials with one indexed lookup
+     * and opens a session (see Authenticator) that the following requests of this
+     * connection run under. A session opened earlier on the connection is closed.
+     * Request format: AUTH|email,password
      * 
-     * @param conn database connection
-     * @param id the assignment ID to search for
-     * @return success with assignment data or error message
-     * @throws SQLException if database error occurs
+     * @param email the employee's email
+     * @param password the password as typed
+     * @return SUCCESS|Logged in successfully, or ERROR|Invalid email or password
      */
-    private String findAssignment(Connection conn, int id) throws SQLException {
-        String sql = "SELECT * FROM employeeassignments WHERE assignment_id=?";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setInt(1, id);
-        ResultSet rs = pst.executeQuery();
-
-        if (rs.next()) {
-            return "SUCCESS|" + rs.getInt("employee_id") + ","
-                    + rs.getInt("branch_id") + ","
-                    + rs.getString("assignment_type") + ","
-                    + rs.getDate("assignment_date") + ","
-                    + rs.getString("description") + ","
-                    + rs.getString("status");
-        }
-        return "ERROR|Assignment not found";
+    private String handleAuth(String email, String password) {
+        try {
+            SessionRegistry.Session opened = Authenticator.authenticate(email.trim(), password);
+            SessionRegistry.close(session, "replaced");
+            session = opened;
+            return "SUCCESS|Logged in successfully";
+        } catch (Exception e) {
+            return "ERROR|" + e.getMessage();
+        }
     }
 
-    /**
-     * Finds a vehicle maintenance record by ID.
-     * 
-     * @param conn database connection
-     * @param id the maintenance ID to search for
-     * @return success with maintenance data or error message
-     * @throws SQLException if database error occurs
-     */
-    private String findMaintenance(Connection conn, int id) throws SQLException {
-        String sql = "SELECT * FROM vehiclemaintenance WHERE maintenance_id=?";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setInt(1, id);
-        ResultSet rs = pst.executeQuery();
-
-        if (rs.next()) {
-            return "SUCCESS|" + rs.getInt("car_id") + ","
-                    + rs.getDate("service_date") + ","
-                    + rs.getString("description") + ","
-                    + rs.getDouble("cost");
-        }
-        return "ERROR|Maintenance record not found";
-    }
+    // ==================== BATCH OPERATIONS ====================
+    private static final String MARK_SQL = "UPDATE Cars SET status=? WHERE car_id=?";
 
     /**
-     * Finds a rental record by ID.
+     * Handles BATCH requests: an ordered list of ADD, UPDATE and DELETE sub-requests
+     * separated by BATCH_SEPARATOR, executed on one connection in one transaction.
+     * Consecutive ADDs to the same table are sent to MySQL as one JDBC batch.
+     * A batch may also change only the status of a car with MARK|Cars|car_id,status,
+     * so the client does not have to send the whole row.
+     * Either every item is committed or none is.
+     * Request format: BATCH|ACTION|TABLE|DATA{RS}ACTION|TABLE|DATA...
      * 
-     * @param conn database connection
-     * @param id the rental ID to search for
-     * @return success with rental data or error message
-     * @throws SQLException if database error occurs
+     * @param data the sub-requests joined with BATCH_SEPARATOR
+     * @return SUCCESS| followed by the per-item responses joined with BATCH_SEPARATOR,
+     *         or ERROR|Batch rolled back at item n: message if an item failed
      */
-    private String findRental(Connection conn, int id) throws SQLException {
-        String sql = "SELECT * FROM rentals WHERE rental_id=?";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setInt(1, id);
-        ResultSet rs = pst.executeQuery();
-
-        if (rs.next()) {
-            return "SUCCESS|" + rs.getInt("customer_id") + ","
-                    + rs.getInt("car_id") + ","
-                    + rs.getInt("employee_id") + ","
-                    + rs.getDate("start_date") + ","
-                    + rs.getDate("end_date") + ","
-                    + rs.getDouble("total_amount") + ","
-                    + rs.getString("status");
-        }
-        return "ERROR|Rental not found";
+    private String handleBatch(String data) {
+        String[] items = RequestParser.split(data, 0, BATCH_SEPARATOR.charAt(0));
+        String[] tables = new String[items.length];
+        int[] ids = new int[items.length];
+        String[] results = new String[items.length];
+
+        try (Connection conn = DbConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            int item = 0;
+            int groupStart = 0;
+            PreparedStatement group = null;
+            try {
+                for (item = 0; item < items.length; item++) {
+                    RequestParser parser = RequestParser.get();
+                    if (!parser.parse(items[item])) {
+                        throw new SQLException("Invalid request format");
+                    }
+                    String action = parser.actionName();
+                    String table = parser.tableName();
+                    String[] fields = parser.fields();
+                    tables[item] = table;
+                    ids[item] = -1;
+
+                    TableMetadata metadata = TableMetadata.require(table);
+                    if (action.equals("ADD")) {
+                        if (group == null || !table.equals(tables[groupStart])) {
+                            executeGroup(group, groupStart, item);
+                            group = conn.prepareStatement(metadata.insertSql);
+                            groupStart = item;
+                        }
+                        CrudEngine.bindInsert(group, metadata, fields);
+                        group.addBatch();
+                        results[item] = "SUCCESS|" + metadata.addedMessage;
+                        continue;
+                    }
+
+                    executeGroup(group, groupStart, item);
+                    group = null;
+                    switch (action) {
+                        case "UPDATE":
+                            results[item] = CrudEngine.update(conn, metadata, fields);
+                            ids[item] = Integer.parseInt(fields[0]);
+                            break;
+                        case "DELETE":
+                            ids[item] = Integer.parseInt(fields[0]);
+                            CrudEngine.delete(conn, metadata, ids[item]);
+                            results[item] = "SUCCESS|Record deleted successfully";
+                            break;
+                        case "MARK":
+                            if (!table.equals("Cars") || fields.length < 2) {
+                                throw new SQLException("MARK expects Cars|car_id,status");
+                            }
+                            ids[item] = Integer.parseInt(fields[0]);
+                            PreparedStatement mark = conn.prepareStatement(MARK_SQL);
+                            mark.setString(1, fields[1]);
+                            mark.setInt(2, ids[item]);
+                            if (mark.executeUpdate() == 0) {
+                                throw new SQLException("Car not found");
+                            }
+                            results[item] = "SUCCESS|Car updated successfully";
+                            break;
+                        default:
+                            throw new SQLException("Unsupported batch action: " + action);
+                    }
+                }
+                item = items.length - 1;
+                executeGroup(group, groupStart, items.length);
+                conn.commit();
+            } catch (Exception e) {
+                conn.rollback();
+                return "ERROR|Batch rolled back at item " + (item + 1) + ": " + e.getMessage();
+            }
+        } catch (Exception e) {
+            return "ERROR|" + e.getMessage();
+        }
+
+        // Only committed changes may invalidate the caches
+        for (int i = 0; i < items.length; i++) {
+            if (ids[i] < 0) {
+                ListCache.bump(tables[i]);
+            } else {
+                invalidate(tables[i], ids[i]);
+            }
+            // Added rows and deleted cars are not tracked one by one here
+            if (ids[i] < 0 || tables[i].equals("Cars")) {
+                AvailabilityIndex.tableChanged(tables[i]);
+            }
+        }
+        return "SUCCESS|" + String.join(BATCH_SEPARATOR, results);
     }
 
     /**
-     * Finds a payment record by ID.
+     * Sends the batched INSERTs of one group of consecutive ADD items to the database.
      * 
-     * @param conn database connection
-     * @param id the payment ID to search for
-     * @return success with payment data or error message
-     * @throws SQLException if database error occurs
+     * @param group the batched statement, or null if there is no open group
+     * @param from index of the first item in the group
+     * @param to index after the last item in the group
+     * @throws SQLException if one of the inserts fails
      */
-    private String findPayment(Connection conn, int id) throws SQLException {
-        String sql = "SELECT * FROM payments WHERE payment_id=?";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setInt(1, id);
-        ResultSet rs = pst.executeQuery();
-
-        if (rs.next()) {
-            return "SUCCESS|" + rs.getInt("rental_id") + ","
-                    + rs.getDouble("amount") + ","
-                    + rs.getDate("payment_date") + ","
-                    + rs.getString("payment_method") + ","
-                    + rs.getString("payment_status");
-        }
-        return "ERROR|Payment not found";
+    private static void executeGroup(PreparedStatement group, int from, int to) throws SQLException {
+        if (group == null) {
+            return;
+        }
+        try {
+            group.executeBatch();
+        } catch (BatchUpdateException e) {
+            throw new SQLException("items " + (from + 1) + "-" + to + " rejected: " + e.getMessage(), e);
+        } finally {
+            group.close();
+        }
     }
 
     /**
-     * Finds a customer record by ID.
+     * Removes a written row from the FIND cache and marks cached LIST responses
+     * of the table as stale. A changed rental is also re-read into the
+     * AvailabilityIndex, on a pooled connection of its own: call this after the
+     * writing connection has been closed, never while holding it.
      * 
-     * @param conn database connection
-     * @param id the customer ID to search for
-     * @return success with customer data or error message
-     * @throws SQLException if database error occurs
+     * @param table the target table name
+     * @param id the primary key of the changed row
      */
-    private String findCustomer(Connection conn, int id) throws SQLException {
-        String sql = "SELECT * FROM customers WHERE customer_id=?";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setInt(1, id);
-        ResultSet rs = pst.executeQuery();
-
-        if (rs.next()) {
-            String phone = rs.getString("phone_number");
-            String address = rs.getString("address");
-            String license = rs.getString("license_number");
-            return "SUCCESS|" + rs.getString("first_name") + ","
-                    + rs.getString("last_name") + ","
-                    + rs.getString("email") + ","
-                    + (phone != null ? phone : "") + ","
-                    + (address != null ? address : "") + ","
-                    + (license != null ? license : "");
-        }
-        return "ERROR|Customer not found";
+    static void invalidate(String table, int id) {
+        if (table.equals("Rentals")) {
+            AvailabilityIndex.rentalChanged(id);
+        }
+        ListCache.bump(table);
+        EntityCache cache = EntityCache.forTable(table);
+        if (cache != null) {
+            cache.invalidate(id);
+        }
+        EntityCache records = EntityCache.forRecords(table);
+        if (records != null) {
+            records.invalidate(id);
+        }
     }
 
+    // ==================== FIND OPERATIONS ====================
     /**
-     * Finds an employee record by ID.
+     * Handles FIND action requests for all tables.
+     * Serves rows from the EntityCache when possible and caches successful lookups.
      * 
-     * @param conn database connection
-     * @param id the employee ID to search for
-     * @return success with employee data or error message
-     * @throws SQLException if database error occurs
+     * @param table the target table name
+     * @param id the ID of the record to find
+     * @return success with record data or error message
      */
-    private String findEmployee(Connection conn, int id) throws SQLException {
-        String sql = "SELECT * FROM employees_login WHERE employee_id=?";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setInt(1, id);
-        ResultSet rs = pst.executeQuery();
-
-        if (rs.next()) {
-            String phone = rs.getString("phone_number");
-            String address = rs.getString("address");
-            return "SUCCESS|" + rs.getString("first_name") + ","
-                    + rs.getString("last_name") + ","
-                    + rs.getString("email") + ","
-                    + (phone != null ? phone : "") + ","
-                    + (address != null ? address : "") + ","
-                    + rs.getString("password_hash");
-        }
-        return "ERROR|Employee not found";
+    private String handleFind(String table, int id) {
+        EntityCache cache = EntityCache.forTable(table);
+        if (cache == null) {
+            return loadRow(table, id);
+        }
+
+        String cached = cache.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        long stamp = cache.stamp();
+        String response = loadRow(table, id);
+        if (response.startsWith("SUCCESS|")) {
+            cache.put(id, response, stamp);
+        }
+        return response;
     }
 
-    // ==================== LIST OPERATIONS ====================
     /**
-     * Handles LIST action requests for all tables.
-     * Returns a summary list of all records in the specified table.
+     * Reads a single record from the database for a FIND request.
      * 
      * @param table the target table name
-     * @return success with semicolon-separated list of records or error message
+     * @param id the ID of the record to find
+     * @return success with record data or error message
      */
-    private String handleList(String table) {
+    private String loadRow(String table, int id) {
+        TableMetadata metadata = TableMetadata.forTable(table);
+        if (metadata == null) {
+            return "ERROR|Unknown table: " + table;
+        }
         try (Connection conn = DbConnection.getConnection()) {
-
-            switch (table) {
-                case "Cars":
-                    return listCars(conn);
-                case "Branches":
-                    return listBranches(conn);
-                case "Insurance":
-                    return listInsurance(conn);
-                case "Damages":
-                    return listDamages(conn);
-                case "EmployeeAssignments":
-                    return listAssignments(conn);
-                case "VehicleMaintenance":
-                    return listMaintenance(conn);
-                case "Rentals":
-                    return listRentals(conn);
-                case "Payments":
-                    return listPayments(conn);
-                case "Customers":
-                    return listCustomers(conn);
-                case "Employees":
-                    return listEmployees(conn);
-                default:
-                    return "ERROR|Unknown table: " + table;
-            }
+            return CrudEngine.find(conn, metadata, id);
 
         } catch (Exception e) {
             return "ERROR|" + e.getMessage();
         }
     }
 
+    private static final byte[] RECORD_PREFIX = "RECORD|".getBytes(StandardCharsets.US_ASCII);
+
     /**
-     * Lists all cars with basic information.
-     * Format: "car_id - make model"
+     * Handles RECORD requests: a FIND answered with a typed record instead of text.
+     * The response line is RECORD| followed by the bytes of RecordSchema.encode and a
+     * newline; BinaryProtocol.encodeResponse strips only that final newline, so the
+     * record may contain any byte. Records are cached like FIND responses.
      * 
-     * @param conn database connection
-     * @return success with semicolon-separated list of cars
-     * @throws SQLException if database error occurs
+     * @param table the target table name
+     * @param data the ID of the record to find
+     * @return encoded response line, RECORD|record or ERROR|message
      */
-    private String listCars(Connection conn) throws SQLException {
-        String sql = "SELECT car_id, make, model FROM Cars ORDER BY car_id";
-        Statement st = conn.createStatement();
-        ResultSet rs = st.executeQuery(sql);
-
-        StringBuilder result = new StringBuilder("SUCCESS|");
-        boolean first = true;
-        while (rs.next()) {
-            if (!first) {
-                result.append(";");
-            }
-            result.append(rs.getInt("car_id")).append(" - ")
-                    .append(rs.getString("make")).append(" ")
-                    .append(rs.getString("model"));
-            first = false;
+    private byte[] handleRecord(String table, String data) {
+        TableMetadata metadata = TableMetadata.forTable(table);
+        if (metadata == null) {
+            return toLine("ERROR|Unknown table: " + table);
+        }
+        int id;
+        try {
+            id = Integer.parseInt(data);
+        } catch (NumberFormatException e) {
+            return toLine("ERROR|" + e.getMessage());
         }
-        return result.toString();
-    }
 
-    /**
-     * Lists all branches with basic information.
-     * Format: "branch_id - branch_name"
-     * 
-     * @param conn database connection
-     * @return success with semicolon-separated list of branches
-     * @throws SQLException if database error occurs
-     */
-    private String listBranches(Connection conn) throws SQLException {
-        String sql = "SELECT branch_id, branch_name FROM branches ORDER BY branch_id";
-        Statement st = conn.createStatement();
-        ResultSet rs = st.executeQuery(sql);
-
-        StringBuilder result = new StringBuilder("SUCCESS|");
-        boolean first = true;
-        while (rs.next()) {
-            if (!first) {
-                result.append(";");
+        EntityCache cache = EntityCache.forRecords(table);
+        if (cache != null) {
+            String cached = cache.get(id);
+            if (cached != null) {
+                return cached.getBytes(StandardCharsets.ISO_8859_1);
             }
-            result.append(rs.getInt("branch_id")).append(" - ")
-                    .append(rs.getString("branch_name"));
-            first = false;
         }
-        return result.toString();
-    }
+        long stamp = cache != null ? cache.stamp() : 0;
 
-    /**
-     * Lists all insurance policies with basic information.
-     * Format: "insurance_id - policy_number"
-     * 
-     * @param conn database connection
-     * @return success with semicolon-separated list of insurance policies
-     * @throws SQLException if database error occurs
-     */
-    private String listInsurance(Connection conn) throws SQLException {
-        String sql = "SELECT insurance_id, policy_number FROM insurance ORDER BY insurance_id";
-        Statement st = conn.createStatement();
-        ResultSet rs = st.executeQuery(sql);
-
-        StringBuilder result = new StringBuilder("SUCCESS|");
-        boolean first = true;
-        while (rs.next()) {
-            if (!first) {
-                result.append(";");
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        try (Connection conn = DbConnection.getConnection();
+                PreparedStatement pst = conn.prepareStatement(metadata.selectSql)) {
+            pst.setInt(1, id);
+            try (ResultSet rs = pst.executeQuery()) {
+                if (!rs.next()) {
+                    return toLine("ERROR|" + metadata.notFoundMessage);
+                }
+                line.write(RECORD_PREFIX, 0, RECORD_PREFIX.length);
+                RecordSchema.encode(metadata, rs, line);
+                line.write('\n');
             }
-            result.append(rs.getInt("insurance_id")).append(" - ")
-                    .append(rs.getString("policy_number"));
-            first = false;
+        } catch (Exception e) {
+            return toLine("ERROR|" + e.getMessage());
         }
-        return result.toString();
-    }
 
-    /**
-     * Lists all damage records with basic information.
-     * Format: "damage_id - status"
-     * 
-     * @param conn database connection
-     * @return success with semicolon-separated list of damages
-     * @throws SQLException if database error occurs
-     */
-    private String listDamages(Connection conn) throws SQLException {
-        String sql = "SELECT damage_id, status FROM damages ORDER BY damage_id";
-        Statement st = conn.createStatement();
-        ResultSet rs = st.executeQuery(sql);
-
-        StringBuilder result = new StringBuilder("SUCCESS|");
-        boolean first = true;
-        while (rs.next()) {
-            if (!first) {
-                result.append(";");
-            }
-            result.append(rs.getInt("damage_id")).append(" - ")
-                    .append(rs.getString("status"));
-            first = false;
+        byte[] bytes = line.toByteArray();
+        if (cache != null) {
+            cache.put(id, new String(bytes, StandardCharsets.ISO_8859_1), stamp);
         }
-        return result.toString();
+        return bytes;
     }
 
+    // ==================== LIST OPERATIONS ====================
     /**
-     * Lists all employee assignments with basic information.
-     * Format: "assignment_id - assignment_type"
-     * 
-     * @param conn database connection
-     * @return success with semicolon-separated list of assignments
-     * @throws SQLException if database error occurs
+     * Formats one row of a LIST result.
      */
-    private String listAssignments(Connection conn) throws SQLException {
-        String sql = "SELECT assignment_id, assignment_type FROM employeeassignments ORDER BY assignment_id";
-        Statement st = conn.createStatement();
-        ResultSet rs = st.executeQuery(sql);
-
-        StringBuilder result = new StringBuilder("SUCCESS|");
-        boolean first = true;
-        while (rs.next()) {
-            if (!first) {
-                result.append(";");
-            }
-            result.append(rs.getInt("assignment_id")).append(" - ")
-                    .append(rs.getString("assignment_type"));
-            first = false;
-        }
-        return result.toString();
+    @FunctionalInterface
+    private interface RowFormatter {
+        void append(ResultSet rs, StringBuilder out) throws SQLException;
     }
 
     /**
-     * Lists all vehicle maintenance records with basic information.
-     * Format: "maintenance_id - service_date"
-     * 
-     * @param conn database connection
-     * @return success with semicolon-separated list of maintenance records
-     * @throws SQLException if database error occurs
+     * The query, key column and row format of one table's LIST.
      */
-    private String listMaintenance(Connection conn) throws SQLException {
-        String sql = "SELECT maintenance_id, service_date FROM vehiclemaintenance ORDER BY maintenance_id";
-        Statement st = conn.createStatement();
-        ResultSet rs = st.executeQuery(sql);
-
-        StringBuilder result = new StringBuilder("SUCCESS|");
-        boolean first = true;
-        while (rs.next()) {
-            if (!first) {
-                result.append(";");
-            }
-            result.append(rs.getInt("maintenance_id")).append(" - ")
-                    .append(rs.getDate("service_date"));
-            first = false;
+    private static final class ListQuery {
+        final String select;
+        final String key;
+        final String keyLabel;
+        final RowFormatter formatter;
+
+        ListQuery(String select, String key, RowFormatter formatter) {
+            this.select = select;
+            this.key = key;
+            this.keyLabel = key.substring(key.indexOf('.') + 1);
+            this.formatter = formatter;
         }
-        return result.toString();
     }
 
-    /**
-     * Lists all rentals with detailed information including customer and car details.
-     * Format: "rental_id - customer_name - car_info : car_id"
-     * Example: "2 - Alex Johnson - Toyota Camry : 5"
-     * 
-     * @param conn database connection
-     * @return success with semicolon-separated list of rentals
-     * @throws SQLException if database error occurs
-     */
-    private String listRentals(Connection conn) throws SQLException {
-        String sql = "SELECT r.rental_id, c.first_name, c.last_name, "
+    private static final Map<String, ListQuery> lists = new HashMap<>();
+
+    static {
+        // Format: "car_id - make model"
+        lists.put("Cars", new ListQuery("SELECT car_id, make, model FROM Cars", "car_id",
+                (rs, out) -> out.append(rs.getInt("car_id")).append(" - ")
+                        .append(rs.getString("make")).append(" ")
+                        .append(rs.getString("model"))));
+        // Format: "branch_id - branch_name"
+        lists.put("Branches", new ListQuery("SELECT branch_id, branch_name FROM branches", "branch_id",
+                (rs, out) -> out.append(rs.getInt("branch_id")).append(" - ")
+                        .append(rs.getString("branch_name"))));
+        // Format: "insurance_id - policy_number"
+        lists.put("Insurance", new ListQuery("SELECT insurance_id, policy_number FROM insurance", "insurance_id",
+                (rs, out) -> out.append(rs.getInt("insurance_id")).append(" - ")
+                        .append(rs.getString("policy_number"))));
+        // Format: "damage_id - status"
+        lists.put("Damages", new ListQuery("SELECT damage_id, status FROM damages", "damage_id",
+                (rs, out) -> out.append(rs.getInt("damage_id")).append(" - ")
+                        .append(rs.getString("status"))));
+        // Format: "assignment_id - assignment_type"
+        lists.put("EmployeeAssignments", new ListQuery(
+                "SELECT assignment_id, assignment_type FROM employeeassignments", "assignment_id",
+                (rs, out) -> out.append(rs.getInt("assignment_id")).append(" - ")
+                        .append(rs.getString("assignment_type"))));
+        // Format: "maintenance_id - service_date"
+        lists.put("VehicleMaintenance", new ListQuery(
+                "SELECT maintenance_id, service_date FROM vehiclemaintenance", "maintenance_id",
+                (rs, out) -> out.append(rs.getInt("maintenance_id")).append(" - ")
+                        .append(rs.getDate("service_date"))));
+        // Format: "rental_id - customer_name - car_info : car_id"
+        // Example: "2 - Alex Johnson - Toyota Camry : 5"
+        lists.put("Rentals", new ListQuery("SELECT r.rental_id, c.first_name, c.last_name, "
                 + "car.car_id, car.make, car.model "
                 + "FROM rentals r "
                 + "JOIN customers c ON r.customer_id = c.customer_id "
-                + "JOIN Cars car ON r.car_id = car.car_id "
-                + "ORDER BY r.rental_id";
-        Statement st = conn.createStatement();
-        ResultSet rs = st.executeQuery(sql);
-
-        StringBuilder result = new StringBuilder("SUCCESS|");
-        boolean first = true;
-        while (rs.next()) {
-            if (!first) {
-                result.append(";");
-            }
-            // Format: "rental_id - customer_name - car_info : car_id"
-            // Example: "2 - Alex Johnson - Toyota Camry : 5"
-            result.append(rs.getInt("rental_id")).append(" - ")
-                    .append(rs.getString("first_name")).append(" ")
-                    .append(rs.getString("last_name")).append(" - ")
-                    .append(rs.getString("make")).append(" ")
-                    .append(rs.getString("model")).append(" : ")
-                    .append(rs.getInt("car_id"));
-            first = false;
-        }
-        return result.toString();
+                + "JOIN Cars car ON r.car_id = car.car_id", "r.rental_id",
+                (rs, out) -> out.append(rs.getInt("rental_id")).append(" - ")
+                        .append(rs.getString("first_name")).append(" ")
+                        .append(rs.getString("last_name")).append(" - ")
+                        .append(rs.getString("make")).append(" ")
+                        .append(rs.getString("model")).append(" : ")
+                        .append(rs.getInt("car_id"))));
+        // Format: "payment_id - payment_date - rental_id"
+        lists.put("Payments", new ListQuery("SELECT payment_id, payment_date FROM payments", "payment_id",
+                (rs, out) -> out.append(rs.getInt("payment_id")).append(" - ")
+                        .append(rs.getDate("payment_date")).append(" - ").append("rental_id")));
+        // Format: "customer_id - first_name last_name"
+        lists.put("Customers", new ListQuery("SELECT customer_id, first_name, last_name FROM customers", "customer_id",
+                (rs, out) -> out.append(rs.getInt("customer_id")).append(" - ")
+                        .append(rs.getString("first_name")).append(" ")
+                        .append(rs.getString("last_name"))));
+        // Format: "employee_id - first_name last_name"
+        lists.put("Employees", new ListQuery("SELECT employee_id, first_name, last_name FROM employees_login", "employee_id",
+                (rs, out) -> out.append(rs.getInt("employee_id")).append(" - ")
+                        .append(rs.getString("first_name")).append(" ")
+                        .append(rs.getString("last_name"))));
     }
 
     /**
-     * Lists all payments with basic information.
-     * Format: "payment_id - payment_date - rental_id"
+     * Handles plain LIST requests: every row of the table, ordered by ID.
      * 
-     * @param conn database connection
-     * @return success with semicolon-separated list of payments
-     * @throws SQLException if database error occurs
+     * @param table the target table name
+     * @return success with semicolon-separated list of records or error message
      */
-    private String listPayments(Connection conn) throws SQLException {
-        String sql = "SELECT payment_id, payment_date FROM payments ORDER BY payment_id";
-        Statement st = conn.createStatement();
-        ResultSet rs = st.executeQuery(sql);
-
-        StringBuilder result = new StringBuilder("SUCCESS|");
-        boolean first = true;
-        while (rs.next()) {
-            if (!first) {
-                result.append(";");
+    private String handleList(String table) {
+        ListQuery query = lists.get(table);
+        if (query == null) {
+            return "ERROR|Unknown table: " + table;
+        }
+        try (Connection conn = DbConnection.getConnection()) {
+            PreparedStatement pst = conn.prepareStatement(query.select + " ORDER BY " + query.key);
+            ResultSet rs = pst.executeQuery();
+
+            StringBuilder result = new StringBuilder("SUCCESS|");
+            boolean first = true;
+            while (rs.next()) {
+                if (!first) {
+                    result.append(";");
+                }
+                query.formatter.append(rs, result);
+                first = false;
             }
-            result.append(rs.getInt("payment_id")).append(" - ")
-                    .append(rs.getDate("payment_date")).append(" - ").append("rental_id");
-            first = false;
+            return result.toString();
+
+        } catch (Exception e) {
+            return "ERROR|" + e.getMessage();
         }
-        return result.toString();
     }
 
     /**
-     * Lists all customers with basic information.
-     * Format: "customer_id - first_name last_name"
+     * Handles STREAM requests: every row of the table, like LIST, but written to the
+     * socket in CHUNK|row;row;... frames of about ServerConfig.LIST_STREAM_CHUNK_CHARS
+     * while a forward-only ResultSet is read ServerConfig.LIST_STREAM_FETCH_SIZE rows
+     * at a time. Neither the driver nor the server ever holds the whole table, so the
+     * memory used per request is constant however large the table is.
+     * Response format: zero or more CHUNK|rows lines, then END|row_count, or an
+     * ERROR|message line that ends the stream early.
      * 
-     * @param conn database connection
-     * @return success with semicolon-separated list of customers
-     * @throws SQLException if database error occurs
+     * @param table the target table name
+     * @param sink receives the CHUNK frames
+     * @return the terminating END|row_count or ERROR|message
      */
-    private String listCustomers(Connection conn) throws SQLException {
-        String sql = "SELECT customer_id, first_name, last_name FROM customers ORDER BY customer_id";
-        Statement st = conn.createStatement();
-        ResultSet rs = st.executeQuery(sql);
-
-        StringBuilder result = new StringBuilder("SUCCESS|");
-        boolean first = true;
-        while (rs.next()) {
-            if (!first) {
-                result.append(";");
+    private String handleStream(String table, ResponseSink sink) {
+        ListQuery query = lists.get(table);
+        if (query == null) {
+            return "ERROR|Unknown table: " + table;
+        }
+        try (Connection conn = DbConnection.getConnection()) {
+            PreparedStatement pst = conn.prepareStatement(query.select + " ORDER BY " + query.key);
+            pst.setFetchSize(ServerConfig.LIST_STREAM_FETCH_SIZE);
+            ResultSet rs = pst.executeQuery();
+
+            StringBuilder chunk = new StringBuilder(ServerConfig.LIST_STREAM_CHUNK_CHARS + 256);
+            chunk.append("CHUNK|");
+            int empty = chunk.length();
+            int count = 0;
+            while (rs.next()) {
+                if (chunk.length() > empty) {
+                    chunk.append(";");
+                }
+                query.formatter.append(rs, chunk);
+                count++;
+                if (chunk.length() >= ServerConfig.LIST_STREAM_CHUNK_CHARS) {
+                    sink.write(toLine(chunk.toString()));
+                    chunk.setLength(empty);
+                }
+            }
+            if (chunk.length() > empty) {
+                sink.write(toLine(chunk.toString()));
             }
-            result.append(rs.getInt("customer_id")).append(" - ")
-                    .append(rs.getString("first_name")).append(" ")
-                    .append(rs.getString("last_name"));
-            first = false;
+            pst.close();
+            return "END|" + count;
+
+        } catch (Exception e) {
+            return "ERROR|" + e.getMessage();
         }
-        return result.toString();
     }
 
     /**
-     * Lists all employees with basic information.
-     * Format: "employee_id - first_name last_name"
+     * Handles paged LIST requests using keyset pagination: the page starts right
+     * after the last ID of the previous page, so every page is an index range scan
+     * of at most limit + 1 rows no matter how deep the client has scrolled.
+     * Request format: LIST|TABLE|limit,after_id,sort where after_id may be empty
+     * for the first page and sort is asc (default) or desc.
+     * Response format: SUCCESS|next_after_id|row;row;... where next_after_id is
+     * the continuation token for the next page, empty on the last page.
      * 
-     * @param conn database connection
-     * @return success with semicolon-separated list of employees
-     * @throws SQLException if database error occurs
+     * @param table the target table name
+     * @param data limit, after_id and optional sort, comma-separated
+     * @return success with the continuation token and the page, or error message
      */
-    private String listEmployees(Connection conn) throws SQLException {
-        String sql = "SELECT employee_id, first_name, last_name FROM employees_login ORDER BY employee_id";
-        Statement st = conn.createStatement();
-        ResultSet rs = st.executeQuery(sql);
-
-        StringBuilder result = new StringBuilder("SUCCESS|");
-        boolean first = true;
-        while (rs.next()) {
-            if (!first) {
-                result.append(";");
+    private String handleListPage(String table, String data) {
+        ListQuery query = lists.get(table);
+        if (query == null) {
+            return "ERROR|Unknown table: " + table;
+        }
+        try (Connection conn = DbConnection.getConnection()) {
+            String[] fields = data.split(",", -1);
+            int limit = fields[0].isEmpty() ? ServerConfig.LIST_DEFAULT_PAGE_SIZE : Integer.parseInt(fields[0]);
+            if (limit < 1 || limit > ServerConfig.LIST_MAX_PAGE_SIZE) {
+                return "ERROR|Page size must be between 1 and " + ServerConfig.LIST_MAX_PAGE_SIZE;
             }
-            result.append(rs.getInt("employee_id")).append(" - ")
-                    .append(rs.getString("first_name")).append(" ")
-                    .append(rs.getString("last_name"));
-            first = false;
+            String after = fields.length > 1 ? fields[1] : "";
+            boolean descending = fields.length > 2 && fields[2].equalsIgnoreCase("desc");
+
+            StringBuilder sql = new StringBuilder(query.select);
+            if (!after.isEmpty()) {
+                sql.append(" WHERE ").append(query.key).append(descending ? " < ?" : " > ?");
+            }
+            sql.append(" ORDER BY ").append(query.key).append(descending ? " DESC" : " ASC").append(" LIMIT ?");
+
+            PreparedStatement pst = conn.prepareStatement(sql.toString());
+            int index = 1;
+            if (!after.isEmpty()) {
+                pst.setInt(index++, Integer.parseInt(after));
+            }
+            // One extra row tells whether another page follows
+            pst.setInt(index, limit + 1);
+            ResultSet rs = pst.executeQuery();
+
+            StringBuilder rows = new StringBuilder();
+            int count = 0;
+            int lastId = 0;
+            boolean more = false;
+            while (rs.next()) {
+                if (count == limit) {
+                    more = true;
+                    break;
+                }
+                if (count > 0) {
+                    rows.append(";");
+                }
+                query.formatter.append(rs, rows);
+                lastId = rs.getInt(query.keyLabel);
+                count++;
+            }
+            return "SUCCESS|" + (more ? String.valueOf(lastId) : "") + "|" + rows;
+
+        } catch (Exception e) {
+            return "ERROR|" + e.getMessage();
         }
-        return result.toString();
     }
 }
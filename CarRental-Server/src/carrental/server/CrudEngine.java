@@ -0,0 +1,216 @@
+/*
+ * Car Rental Server
+ * Generic ADD, UPDATE, DELETE and FIND execution driven by TableMetadata
+ */
+package carrental.server;
+
+import java.sql.*;
+
+/**
+ * CrudEngine - Server Module
+ * Runs the CRUD statements of every table through one code path. Fields are bound
+ * and rows are formatted by walking the table's columns and switching on their type,
+ * so adding a table only needs a TableMetadata entry; it then uses the pooled
+ * connections, the statement cache and the EntityCache like every other table.
+ * Responses are the same as the former per-table methods produced.
+ *
+ * @author Izaek Kisuule
+ */
+final class CrudEngine {
+
+    private CrudEngine() {
+    }
+
+    /**
+     * Binds the fields of one ADD request to the INSERT statement without executing it,
+     * so BATCH can add it to a JDBC batch.
+     *
+     * @param pst the table's INSERT statement
+     * @param table the table metadata
+     * @param fields the field values in column order
+     * @throws SQLException if a value cannot be bound
+     */
+    static void bindInsert(PreparedStatement pst, TableMetadata table, String[] fields) throws SQLException {
+        bind(pst, table, fields, 0);
+    }
+
+    /**
+     * Inserts a new row.
+     *
+     * @param conn database connection
+     * @param table the table metadata
+     * @param fields the field values in column order
+     * @return the success response
+     * @throws SQLException if database error occurs
+     */
+    static String insert(Connection conn, TableMetadata table, String[] fields) throws SQLException {
+        PreparedStatement pst = conn.prepareStatement(table.insertSql);
+        bind(pst, table, fields, 0);
+        pst.executeUpdate();
+        return "SUCCESS|" + table.addedMessage;
+    }
+
+    /**
+     * Inserts a new row and returns the primary key MySQL generated for it.
+     *
+     * @param conn database connection
+     * @param table the table metadata
+     * @param fields the field values in column order
+     * @return the new primary key
+     * @throws SQLException if database error occurs or no key was generated
+     */
+    static int insertReturningKey(Connection conn, TableMetadata table, String[] fields) throws SQLException {
+        PreparedStatement pst = conn.prepareStatement(table.insertSql, Statement.RETURN_GENERATED_KEYS);
+        bind(pst, table, fields, 0);
+        pst.executeUpdate();
+        try (ResultSet keys = pst.getGeneratedKeys()) {
+            if (!keys.next()) {
+                throw new SQLException("No " + table.key + " was generated");
+            }
+            return keys.getInt(1);
+        }
+    }
+
+    /**
+     * Updates every column of an existing row.
+     *
+     * @param conn database connection
+     * @param table the table metadata
+     * @param fields the primary key followed by the field values in column order
+     * @return the success response
+     * @throws SQLException if database error occurs
+     */
+    static String update(Connection conn, TableMetadata table, String[] fields) throws SQLException {
+        PreparedStatement pst = conn.prepareStatement(table.updateSql);
+        bind(pst, table, fields, 1);
+        pst.setInt(table.columns.length + 1, Integer.parseInt(fields[0]));
+        pst.executeUpdate();
+        return "SUCCESS|" + table.updatedMessage;
+    }
+
+    /**
+     * Deletes a row by primary key.
+     *
+     * @param conn database connection
+     * @param table the table metadata
+     * @param id the primary key
+     * @throws SQLException if database error occurs
+     */
+    static void delete(Connection conn, TableMetadata table, int id) throws SQLException {
+        PreparedStatement pst = conn.prepareStatement(table.deleteSql);
+        pst.setInt(1, id);
+        pst.executeUpdate();
+    }
+
+    /**
+     * Reads a row by primary key and formats it as a text FIND response.
+     *
+     * @param conn database connection
+     * @param table the table metadata
+     * @param id the primary key
+     * @return SUCCESS| followed by the fields, or the table's not-found error
+     * @throws SQLException if database error occurs
+     */
+    static String find(Connection conn, TableMetadata table, int id) throws SQLException {
+        PreparedStatement pst = conn.prepareStatement(table.selectSql);
+        pst.setInt(1, id);
+        try (ResultSet rs = pst.executeQuery()) {
+            if (!rs.next()) {
+                return "ERROR|" + table.notFoundMessage;
+            }
+            StringBuilder response = new StringBuilder(128).append("SUCCESS|");
+            format(rs, table, response);
+            return response.toString();
+        }
+    }
+
+    /**
+     * Binds fields[offset..] to parameters 1..n of a statement.
+     * Empty fields of nullable columns are bound as NULL. Password columns are always
+     * hashed, so a client can never store a hash of its own making.
+     */
+    private static void bind(PreparedStatement pst, TableMetadata table, String[] fields, int offset)
+            throws SQLException {
+        TableMetadata.Column[] columns = table.columns;
+        for (int i = 0; i < columns.length; i++) {
+            TableMetadata.Column column = columns[i];
+            String value = fields[offset + i];
+            int index = i + 1;
+            switch (column.type) {
+                case INT:
+                    if (column.nullable && value.isEmpty()) {
+                        pst.setNull(index, Types.INTEGER);
+                    } else {
+                        pst.setInt(index, Integer.parseInt(value));
+                    }
+                    break;
+                case DECIMAL:
+                    if (column.nullable && value.isEmpty()) {
+                        pst.setNull(index, Types.DECIMAL);
+                    } else {
+                        pst.setDouble(index, Double.parseDouble(value));
+                    }
+                    break;
+                case DATE:
+                    if (column.nullable && value.isEmpty()) {
+                        pst.setNull(index, Types.DATE);
+                    } else {
+                        pst.setDate(index, java.sql.Date.valueOf(value));
+                    }
+                    break;
+                default:
+                    if (column.password) {
+                        if (value.isEmpty()) {
+                            throw new SQLException("Password must not be empty");
+                        }
+                        value = Authenticator.hash(value);
+                    }
+                    pst.setString(index, column.nullable && value.isEmpty() ? null : value);
+            }
+        }
+    }
+
+    /**
+     * Appends the current row in FIND format: the columns joined with the table's
+     * separator. NULL in a nullable column becomes an empty field; on '|'-separated
+     * tables strings are never "null" and pipes inside them are sent as '¦'.
+     */
+    private static void format(ResultSet rs, TableMetadata table, StringBuilder out) throws SQLException {
+        TableMetadata.Column[] columns = table.readColumns;
+        boolean escape = table.separator == '|';
+        for (int i = 0; i < columns.length; i++) {
+            TableMetadata.Column column = columns[i];
+            int index = i + 1;
+            if (i > 0) {
+                out.append(table.separator);
+            }
+            switch (column.type) {
+                case INT:
+                    int number = rs.getInt(index);
+                    if (!(column.nullable && rs.wasNull())) {
+                        out.append(number);
+                    }
+                    break;
+                case DECIMAL:
+                    double decimal = rs.getDouble(index);
+                    if (!(column.nullable && rs.wasNull())) {
+                        out.append(decimal);
+                    }
+                    break;
+                case DATE:
+                    java.sql.Date date = rs.getDate(index);
+                    if (!(column.nullable && date == null)) {
+                        out.append(date);
+                    }
+                    break;
+                default:
+                    String text = rs.getString(index);
+                    if (text != null) {
+                        out.append(escape ? text.replace('|', '¦') : text);
+                    } else if (!column.nullable && !escape) {
+                        out.append("null");
+                    }
+            }
+        }
+    }
+}
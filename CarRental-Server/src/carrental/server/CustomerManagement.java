@@ -25,10 +25,7 @@ public class CustomerManagement extends javax.swing.JFrame {
     }
 
     private void loadCustomers() {
-        try {
-            // Use your existing connection method
-            Connection conn = DbConnection.getConnection();
-
+        try (Connection conn = DbConnection.getConnection()) {
             String sql = "SELECT customer_id, first_name, last_name FROM customers ORDER BY customer_id ASC";
             PreparedStatement pst = conn.prepareStatement(sql);
             ResultSet rs = pst.executeQuery();
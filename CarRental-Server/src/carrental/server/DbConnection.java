@@ -4,9 +4,17 @@
  */
 package carrental.server;
 
+import java.lang.reflect.*;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
 
 /**
  * DbConnection - Server Module
@@ -14,20 +22,635 @@ import java.sql.SQLException;
  * Provides centralized JDBC connection management to the MySQL database.
  * Connection details: localhost:3306/car_rental_sys
  *
+ * Connections are pooled: getConnection() lends out a warm physical connection and
+ * close() on the returned object hands it back instead of disconnecting.
+ * The pool validates connections on borrow, keeps between ServerConfig.DB_MIN_IDLE
+ * and ServerConfig.DB_MAX_POOL_SIZE connections, reports connections held longer than
+ * ServerConfig.DB_LEAK_THRESHOLD_MS (with the stack that borrowed them if
+ * ServerConfig.DB_LEAK_TRACE is set) and records how long callers had to wait
+ * (see getPoolStats()).
+ * Each pooled connection also keeps an LRU cache of prepared statements keyed by
+ * SQL text (ServerConfig.DB_STATEMENT_CACHE_SIZE), so prepareStatement() with a
+ * constant SQL string is only parsed on the first call per connection; the other
+ * prepareStatement() overloads bypass the cache, for one-off SQL.
+ * Every statement handed out is traced: executes become JFR events and slow ones
+ * are written to the SlowQueryLog with their parameters and EXPLAIN plan.
+ *
  * @author Izaek Kisuule
  */
 public class DbConnection {
-    private static final String URL = "jdbc:mysql://localhost:3306/car_rental_sys"; 
+    /**
+     * Server-side prepared statements let MySQL parse each cached statement once per
+     * connection; the driver's own cache keeps statements evicted from our LRU cheap to re-prepare.
+     * useCursorFetch makes setFetchSize(n) read a result n rows at a time through a server-side
+     * cursor (streamed LIST) instead of buffering the whole result in the driver.
+     */
+    private static final String URL = "jdbc:mysql://localhost:3306/car_rental_sys"
+            + "?useServerPrepStmts=true&cachePrepStmts=true&prepStmtCacheSize=250&prepStmtCacheSqlLimit=2048"
+            + "&useCursorFetch=true";
     private static final String USER = "root";
     private static final String PASSWORD = "Isaac@1234";
 
+    /** Connections used this recently are handed out without a validation round trip. */
+    private static final long VALIDATION_BYPASS_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final long HOUSEKEEPING_INTERVAL_MS = 10_000;
+    private static final long SLOW_QUERY_NANOS = ServerConfig.SLOW_QUERY_MS > 0
+            ? TimeUnit.MILLISECONDS.toNanos(ServerConfig.SLOW_QUERY_MS) : Long.MAX_VALUE;
+
+    private static final ReentrantLock lock = new ReentrantLock();
+    private static final Condition available = lock.newCondition();
+    /** Idle connections, most recently returned last (LIFO keeps the warmest in use). */
+    private static final Deque<PhysicalConnection> idle = new ArrayDeque<>();
+    /** Connections currently lent out. */
+    private static final Set<PooledConnection> leased = ConcurrentHashMap.newKeySet();
+    private static int totalConnections;
+    private static int waitingThreads;
+
+    private static final AtomicLong borrowCount = new AtomicLong();
+    private static final AtomicLong totalWaitNanos = new AtomicLong();
+    private static final AtomicLong maxWaitNanos = new AtomicLong();
+    private static final AtomicLong timeoutCount = new AtomicLong();
+    private static final AtomicLong leakCount = new AtomicLong();
+    private static final AtomicLong createdCount = new AtomicLong();
+
+    static {
+        ScheduledExecutorService housekeeper = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("db-pool-housekeeper").daemon().factory());
+        housekeeper.scheduleWithFixedDelay(DbConnection::housekeep,
+                HOUSEKEEPING_INTERVAL_MS, HOUSEKEEPING_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
     /**
-     * Establishes and returns a new database connection.
-     * 
+     * Borrows a connection from the pool, opening a new one if the pool is below
+     * its maximum size. The caller must close() it to give it back.
+     *
      * @return Connection object to the car_rental_sys database
-     * @throws SQLException if database connection fails
+     * @throws SQLException if database connection fails or no connection became free in time
      */
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(URL, USER, PASSWORD);
+        ServerEvents.ConnectionAcquire event = new ServerEvents.ConnectionAcquire();
+        event.begin();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(ServerConfig.DB_BORROW_TIMEOUT_MS);
+
+        while (true) {
+            PhysicalConnection physical = null;
+            boolean create = false;
+
+            lock.lock();
+            try {
+                while (physical == null && !create) {
+                    if (!idle.isEmpty()) {
+                        physical = idle.pollLast();
+                    } else if (totalConnections < ServerConfig.DB_MAX_POOL_SIZE) {
+                        totalConnections++;
+                        create = true;
+                    } else {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            timeoutCount.incrementAndGet();
+                            event.timedOut = true;
+                            event.commit();
+                            throw new SQLException("Timed out after " + ServerConfig.DB_BORROW_TIMEOUT_MS
+                                    + " ms waiting for a database connection (pool size "
+                                    + ServerConfig.DB_MAX_POOL_SIZE + ")");
+                        }
+                        waitingThreads++;
+                        try {
+                            available.awaitNanos(remaining);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new SQLException("Interrupted while waiting for a database connection", e);
+                        } finally {
+                            waitingThreads--;
+                        }
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            // Network work happens outside the lock
+            if (create) {
+                try {
+                    physical = new PhysicalConnection(DriverManager.getConnection(URL, USER, PASSWORD));
+                    createdCount.incrementAndGet();
+                } catch (SQLException e) {
+                    discard(null);
+                    throw e;
+                }
+            } else if (!isUsable(physical)) {
+                discard(physical);
+                continue;
+            }
+
+            recordWait(System.nanoTime() - start);
+            PooledConnection handle = new PooledConnection(physical);
+            leased.add(handle);
+            event.created = create;
+            event.commit();
+            return handle.proxy;
+        }
+    }
+
+    /**
+     * Returns a one-line summary of the pool state and wait-time metrics.
+     *
+     * @return pool statistics in key=value form
+     */
+    public static String getPoolStats() {
+        int idleCount;
+        int total;
+        int waiting;
+        lock.lock();
+        try {
+            idleCount = idle.size();
+            total = totalConnections;
+            waiting = waitingThreads;
+        } finally {
+            lock.unlock();
+        }
+        long borrows = borrowCount.get();
+        double avgWaitMs = borrows == 0 ? 0 : totalWaitNanos.get() / 1e6 / borrows;
+        return String.format("total=%d,active=%d,idle=%d,waiting=%d,borrows=%d,created=%d,"
+                + "avgWaitMs=%.3f,maxWaitMs=%.3f,timeouts=%d,leaks=%d",
+                total, total - idleCount, idleCount, waiting, borrows, createdCount.get(),
+                avgWaitMs, maxWaitNanos.get() / 1e6, timeoutCount.get(), leakCount.get());
+    }
+
+    /**
+     * Checks a connection taken from the idle list before lending it out.
+     *
+     * @param physical the pooled physical connection
+     * @return true if the connection can be used
+     */
+    private static boolean isUsable(PhysicalConnection physical) {
+        if (System.nanoTime() - physical.lastUsedNanos < VALIDATION_BYPASS_NANOS) {
+            return true;
+        }
+        try {
+            return physical.raw.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static void recordWait(long waitNanos) {
+        borrowCount.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    /**
+     * Puts a connection back on the idle list after resetting its session state.
+     * Broken connections are closed and their slot freed instead.
+     *
+     * @param physical the physical connection being returned
+     */
+    private static void release(PhysicalConnection physical) {
+        try {
+            if (!physical.raw.getAutoCommit()) {
+                physical.raw.rollback();
+                physical.raw.setAutoCommit(true);
+            }
+            physical.raw.clearWarnings();
+        } catch (SQLException e) {
+            discard(physical);
+            return;
+        }
+
+        physical.lastUsedNanos = System.nanoTime();
+        lock.lock();
+        try {
+            idle.addLast(physical);
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes a physical connection and frees its slot in the pool.
+     *
+     * @param physical the connection to close, or null if creating it failed
+     */
+    private static void discard(PhysicalConnection physical) {
+        if (physical != null) {
+            physical.closeQuietly();
+        }
+        lock.lock();
+        try {
+            totalConnections--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Periodic maintenance: reports leaked connections, closes connections that
+     * have been idle too long and tops the pool back up to its minimum idle size.
+     */
+    private static void housekeep() {
+        long now = System.nanoTime();
+        long leakThreshold = TimeUnit.MILLISECONDS.toNanos(ServerConfig.DB_LEAK_THRESHOLD_MS);
+        for (PooledConnection handle : leased) {
+            if (leakThreshold > 0 && !handle.leakReported && now - handle.borrowedNanos > leakThreshold) {
+                handle.leakReported = true;
+                leakCount.incrementAndGet();
+                System.err.println("Possible connection leak: connection held for "
+                        + (now - handle.borrowedNanos) / 1_000_000 + " ms by " + handle.borrower.getName());
+                if (handle.borrowedAt != null) {
+                    handle.borrowedAt.printStackTrace();
+                }
+            }
+        }
+
+        List<PhysicalConnection> expired = new ArrayList<>();
+        int missing;
+        lock.lock();
+        try {
+            long idleTimeout = TimeUnit.MILLISECONDS.toNanos(ServerConfig.DB_IDLE_TIMEOUT_MS);
+            Iterator<PhysicalConnection> oldestFirst = idle.iterator();
+            while (oldestFirst.hasNext() && idle.size() > ServerConfig.DB_MIN_IDLE) {
+                PhysicalConnection physical = oldestFirst.next();
+                if (now - physical.lastUsedNanos > idleTimeout) {
+                    oldestFirst.remove();
+                    totalConnections--;
+                    expired.add(physical);
+                }
+            }
+            missing = Math.min(ServerConfig.DB_MIN_IDLE - idle.size(),
+                    ServerConfig.DB_MAX_POOL_SIZE - totalConnections);
+            if (missing > 0) {
+                totalConnections += missing;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for (PhysicalConnection physical : expired) {
+            physical.closeQuietly();
+        }
+        for (int i = 0; i < missing; i++) {
+            try {
+                PhysicalConnection physical = new PhysicalConnection(DriverManager.getConnection(URL, USER, PASSWORD));
+                createdCount.incrementAndGet();
+                lock.lock();
+                try {
+                    idle.addFirst(physical);
+                    available.signal();
+                } finally {
+                    lock.unlock();
+                }
+            } catch (SQLException e) {
+                discard(null);
+            }
+        }
+    }
+
+    /**
+     * A real JDBC connection owned by the pool, together with its statement cache.
+     * Only the lease currently holding the connection touches the cache.
+     */
+    private static final class PhysicalConnection {
+        final Connection raw;
+        volatile long lastUsedNanos = System.nanoTime();
+        /** Prepared statements keyed by SQL text, least recently used first. */
+        final Map<String, CachedStatement> statementCache = new LinkedHashMap<>(32, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= ServerConfig.DB_STATEMENT_CACHE_SIZE) {
+                    return false;
+                }
+                eldest.getValue().evict();
+                return true;
+            }
+        };
+
+        PhysicalConnection(Connection raw) {
+            this.raw = raw;
+        }
+
+        /**
+         * Returns the cached statement for the SQL text, preparing it on first use.
+         * Returns null if the cached statement is already checked out by the current
+         * lease (same SQL prepared twice), so the caller falls back to an uncached one.
+         *
+         * @param sql the SQL text
+         * @return a checked-out cached statement, or null
+         * @throws SQLException if preparing the statement fails
+         */
+        CachedStatement checkOut(String sql) throws SQLException {
+            CachedStatement cached = statementCache.get(sql);
+            if (cached == null) {
+                cached = new CachedStatement(raw.prepareStatement(sql), sql);
+                statementCache.put(sql, cached);
+            } else if (cached.inUse) {
+                return null;
+            }
+            cached.inUse = true;
+            return cached;
+        }
+
+        void closeQuietly() {
+            try {
+                raw.close();
+            } catch (SQLException e) {
+            }
+        }
+    }
+
+    /**
+     * The Connection handed to callers. Delegates to the physical connection,
+     * tracks the statements created through it and returns everything to the
+     * pool on close(). Using it after close() fails with an SQLException.
+     */
+    private static final class PooledConnection implements InvocationHandler {
+        final PhysicalConnection physical;
+        final Connection proxy;
+        final long borrowedNanos = System.nanoTime();
+        final Thread borrower = Thread.currentThread();
+        final Exception borrowedAt;
+        final List<Statement> statements = new ArrayList<>();
+        final List<CachedStatement> checkedOut = new ArrayList<>();
+        volatile boolean leakReported;
+        private boolean closed;
+
+        PooledConnection(PhysicalConnection physical) {
+            this.physical = physical;
+            // Filling in a stack trace on every borrow is costly; only the timestamp is always kept
+            this.borrowedAt = ServerConfig.DB_LEAK_TRACE && ServerConfig.DB_LEAK_THRESHOLD_MS > 0
+                    ? new Exception("Connection borrowed here") : null;
+            this.proxy = (Connection) Proxy.newProxyInstance(DbConnection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    close();
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + physical.raw;
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Connection is closed");
+            }
+
+            if (ServerConfig.DB_STATEMENT_CACHE_SIZE > 0 && args != null && args.length == 1
+                    && method.getName().equals("prepareStatement")) {
+                CachedStatement cached = physical.checkOut((String) args[0]);
+                if (cached != null) {
+                    checkedOut.add(cached);
+                    return cached.proxy;
+                }
+            }
+
+            Object result;
+            try {
+                result = method.invoke(physical.raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof Statement) {
+                statements.add((Statement) result);
+            }
+            String name = method.getName();
+            if (name.equals("prepareStatement") || name.equals("createStatement")) {
+                // Uncached statements are traced too, so every execute shows up in a JFR recording
+                return TracedStatement.wrap((Statement) result,
+                        name.equals("prepareStatement") ? (String) args[0] : null);
+            }
+            return result;
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            leased.remove(this);
+
+            // Statements the caller forgot to close would otherwise pile up on the physical connection
+            for (Statement statement : statements) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                }
+            }
+            statements.clear();
+            for (CachedStatement cached : checkedOut) {
+                cached.checkIn();
+            }
+            checkedOut.clear();
+            release(physical);
+        }
+    }
+
+    /**
+     * A prepared statement kept open in a PhysicalConnection's cache.
+     * Callers get a proxy whose close() only checks the statement back in: the
+     * open result set is closed and the parameters are cleared, but the statement
+     * (and, with useServerPrepStmts, its server-side handle) stays prepared.
+     * Statements still open when their lease ends are checked in automatically.
+     */
+    private static final class CachedStatement implements InvocationHandler {
+        final PreparedStatement raw;
+        final PreparedStatement proxy;
+        final TracedStatement trace;
+        boolean inUse;
+        boolean evicted;
+        private ResultSet lastResult;
+
+        CachedStatement(PreparedStatement raw, String sql) {
+            this.raw = raw;
+            this.trace = new TracedStatement(raw, sql, true);
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(DbConnection.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    checkIn();
+                    return null;
+                case "isClosed":
+                    return !inUse;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached" + raw;
+                default:
+                    break;
+            }
+            if (!inUse) {
+                throw new SQLException("Statement is closed");
+            }
+
+            Object result = trace.call(method, args);
+            if (result instanceof ResultSet) {
+                lastResult = (ResultSet) result;
+            }
+            return result;
+        }
+
+        /**
+         * Makes the statement available for the next prepareStatement() of the same SQL.
+         */
+        void checkIn() {
+            if (!inUse) {
+                return;
+            }
+            inUse = false;
+            try {
+                if (lastResult != null) {
+                    lastResult.close();
+                    lastResult = null;
+                }
+                raw.clearParameters();
+                trace.clearParameters();
+                raw.clearBatch();
+                raw.setFetchSize(0);
+            } catch (SQLException e) {
+                evicted = true;
+            }
+            if (evicted) {
+                closeQuietly();
+            }
+        }
+
+        /**
+         * Called when the LRU cache drops this statement. A statement that is
+         * still checked out is closed once its user is done with it.
+         */
+        void evict() {
+            evicted = true;
+            if (!inUse) {
+                closeQuietly();
+            }
+        }
+
+        void closeQuietly() {
+            try {
+                raw.close();
+            } catch (SQLException e) {
+            }
+        }
+    }
+
+    /**
+     * Traces the executes of one driver statement: each execute is reported as a
+     * StatementExecute JFR event, and executes slower than ServerConfig.SLOW_QUERY_MS
+     * go to the SlowQueryLog together with the parameters bound for them.
+     * Used as the proxy handler of statements that were not taken from the statement
+     * cache, and as the delegate of every CachedStatement.
+     */
+    private static final class TracedStatement implements InvocationHandler {
+        final Statement raw;
+        /** SQL of a prepared statement; null for a plain Statement, whose SQL is the execute argument. */
+        final String sql;
+        final boolean cached;
+        /** Parameters bound since the last execute or clearParameters(), indexed from 1. */
+        private Object[] parameters = new Object[8];
+        private int parameterCount;
+
+        TracedStatement(Statement raw, String sql, boolean cached) {
+            this.raw = raw;
+            this.sql = sql;
+            this.cached = cached;
+        }
+
+        static Statement wrap(Statement raw, String sql) {
+            Class<?> type = raw instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+            return (Statement) Proxy.newProxyInstance(DbConnection.class.getClassLoader(),
+                    new Class<?>[]{type}, new TracedStatement(raw, sql, false));
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return call(method, args);
+            }
+        }
+
+        /**
+         * Calls a method on the driver statement. Parameter setters are recorded;
+         * execute methods are timed.
+         */
+        Object call(Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (!name.startsWith("execute")) {
+                if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                    bound((Integer) args[0], name.equals("setNull") ? null : args[1]);
+                } else if (name.equals("clearParameters")) {
+                    clearParameters();
+                }
+                return forward(method, args);
+            }
+
+            ServerEvents.StatementExecute event = new ServerEvents.StatementExecute();
+            event.begin();
+            long start = System.nanoTime();
+            try {
+                return forward(method, args);
+            } finally {
+                long nanos = System.nanoTime() - start;
+                String text = sql != null ? sql
+                        : args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+                event.end();
+                if (event.shouldCommit()) {
+                    event.sql = text;
+                    event.method = name;
+                    event.cached = cached;
+                    event.commit();
+                }
+                if (nanos >= SLOW_QUERY_NANOS && text != null) {
+                    SlowQueryLog.record(text, name, Arrays.copyOfRange(parameters, 1, parameterCount + 1), nanos);
+                }
+            }
+        }
+
+        private Object forward(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private void bound(int index, Object value) {
+            if (index < 1) {
+                return;
+            }
+            if (index >= parameters.length) {
+                parameters = Arrays.copyOf(parameters, Math.max(index + 1, parameters.length * 2));
+            }
+            parameters[index] = value;
+            parameterCount = Math.max(parameterCount, index);
+        }
+
+        void clearParameters() {
+            Arrays.fill(parameters, 0, parameterCount + 1, null);
+            parameterCount = 0;
+        }
     }
 }
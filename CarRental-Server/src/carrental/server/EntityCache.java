@@ -0,0 +1,261 @@
+/*
+ * Car Rental Server
+ * In-memory cache of FIND responses
+ */
+package carrental.server;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * EntityCache - Server Module
+ * Read-through cache of FIND responses for one table, keyed by primary key.
+ * Entries live in an open-addressing hash map over primitive int keys (no boxing,
+ * no per-entry objects), expire after ServerConfig.ENTITY_CACHE_TTL_MS and are
+ * evicted with the CLOCK algorithm once ServerConfig.ENTITY_CACHE_MAX_ENTRIES is reached.
+ * UPDATE and DELETE invalidate the affected row synchronously before they answer the
+ * client, so a client always reads its own writes. The TTL bounds staleness for
+ * changes made outside this server (e.g. cascaded deletes or the server GUI screens).
+ *
+ * @author Izaek Kisuule
+ */
+public class EntityCache {
+
+    private static final Map<String, EntityCache> caches = new HashMap<>();
+    private static final Map<String, EntityCache> recordCaches = new HashMap<>();
+
+    static {
+        for (String table : TableMetadata.names()) {
+            caches.put(table, new EntityCache(ServerConfig.ENTITY_CACHE_MAX_ENTRIES));
+            recordCaches.put(table, new EntityCache(ServerConfig.ENTITY_CACHE_MAX_ENTRIES));
+        }
+    }
+
+    /**
+     * Returns the cache for a protocol table name.
+     *
+     * @param table the TABLE part of a request, e.g. "Cars"
+     * @return the table's cache, or null if the table is unknown or caching is disabled
+     */
+    public static EntityCache forTable(String table) {
+        return ServerConfig.ENTITY_CACHE_TTL_MS > 0 ? caches.get(table) : null;
+    }
+
+    /**
+     * Returns the cache of typed RECORD responses for a protocol table name.
+     * The encoded bytes are stored as an ISO-8859-1 string, one char per byte.
+     *
+     * @param table the TABLE part of a request, e.g. "Cars"
+     * @return the table's record cache, or null if the table is unknown or caching is disabled
+     */
+    public static EntityCache forRecords(String table) {
+        return ServerConfig.ENTITY_CACHE_TTL_MS > 0 ? recordCaches.get(table) : null;
+    }
+
+    private static final int FREE = 0;
+    private static final int USED = 1;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final int maxEntries;
+    private final int mask;
+    private final int[] keys;
+    private final String[] values;
+    private final long[] expiresAt;
+    private final byte[] state;
+    /** CLOCK reference bits: set on hit, cleared as the eviction hand passes. */
+    private final boolean[] referenced;
+    private int size;
+    private int hand;
+    /** Bumped on every invalidation; loads that started before it must not populate. */
+    private long generation;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * Creates a cache holding at most maxEntries rows.
+     *
+     * @param maxEntries maximum number of cached rows
+     */
+    public EntityCache(int maxEntries) {
+        this.maxEntries = Math.max(1, maxEntries);
+        int capacity = Integer.highestOneBit(this.maxEntries * 2 - 1) << 1;
+        this.mask = capacity - 1;
+        this.keys = new int[capacity];
+        this.values = new String[capacity];
+        this.expiresAt = new long[capacity];
+        this.state = new byte[capacity];
+        this.referenced = new boolean[capacity];
+    }
+
+    /**
+     * Looks up a cached response.
+     *
+     * @param id the primary key
+     * @return the cached FIND response, or null on a miss
+     */
+    public String get(int id) {
+        lock.lock();
+        try {
+            int slot = find(id);
+            if (slot < 0) {
+                misses++;
+                return null;
+            }
+            if (System.nanoTime() - expiresAt[slot] > 0) {
+                removeSlot(slot);
+                misses++;
+                return null;
+            }
+            referenced[slot] = true;
+            hits++;
+            return values[slot];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a stamp to take before reading a row from the database.
+     *
+     * @return the current invalidation generation
+     */
+    public long stamp() {
+        lock.lock();
+        try {
+            return generation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Caches a freshly loaded response unless the table was written since the
+     * stamp was taken (the loaded row might already be stale).
+     *
+     * @param id the primary key
+     * @param response the FIND response
+     * @param stamp the value of stamp() taken before the database read
+     */
+    public void put(int id, String response, long stamp) {
+        lock.lock();
+        try {
+            if (stamp != generation) {
+                return;
+            }
+            int slot = find(id);
+            if (slot < 0) {
+                if (size >= maxEntries) {
+                    evictOne();
+                }
+                slot = spread(id);
+                while (state[slot] == USED) {
+                    slot = (slot + 1) & mask;
+                }
+                state[slot] = USED;
+                keys[slot] = id;
+                size++;
+            }
+            values[slot] = response;
+            expiresAt[slot] = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ServerConfig.ENTITY_CACHE_TTL_MS);
+            referenced[slot] = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops a row after it was updated or deleted.
+     *
+     * @param id the primary key
+     */
+    public void invalidate(int id) {
+        lock.lock();
+        try {
+            generation++;
+            int slot = find(id);
+            if (slot >= 0) {
+                removeSlot(slot);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns hit/miss counters for monitoring.
+     *
+     * @return statistics in key=value form
+     */
+    public String getStats() {
+        lock.lock();
+        try {
+            return "size=" + size + ",hits=" + hits + ",misses=" + misses;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int spread(int id) {
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private int find(int id) {
+        int slot = spread(id);
+        while (state[slot] == USED) {
+            if (keys[slot] == id) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Advances the CLOCK hand to the first entry that was not hit since the
+     * hand last passed it (or that has expired) and removes it.
+     */
+    private void evictOne() {
+        long now = System.nanoTime();
+        while (true) {
+            int slot = hand;
+            hand = (hand + 1) & mask;
+            if (state[slot] != USED) {
+                continue;
+            }
+            if (referenced[slot] && now - expiresAt[slot] <= 0) {
+                referenced[slot] = false;
+                continue;
+            }
+            removeSlot(slot);
+            return;
+        }
+    }
+
+    /**
+     * Removes a slot and shifts following entries of the same probe run back,
+     * so lookups never need tombstones.
+     */
+    private void removeSlot(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (state[next] == USED) {
+            int home = spread(keys[next]);
+            // Move the entry into the gap if its home slot is not between gap and next
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                expiresAt[gap] = expiresAt[next];
+                referenced[gap] = referenced[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        state[gap] = FREE;
+        values[gap] = null;
+        referenced[gap] = false;
+        size--;
+    }
+}
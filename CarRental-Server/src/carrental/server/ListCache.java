@@ -0,0 +1,114 @@
+/*
+ * Car Rental Server
+ * Cache of encoded LIST responses
+ */
+package carrental.server;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ListCache - Server Module
+ * Keeps the last LIST response of every table as a ready-to-write byte array.
+ * Every table carries a monotonically increasing version that ADD, UPDATE and
+ * DELETE bump after their write; a cached response is only served while the
+ * versions of all tables it was built from are unchanged. LIST|Rentals joins
+ * Customers and Cars, so it depends on those versions too.
+ * A repeated LIST therefore costs one buffer write instead of a query and a
+ * full StringBuilder rebuild. Writes that bypass the request handlers (the server's
+ * own screens) do not bump a version, so entries also expire after
+ * ServerConfig.LIST_CACHE_TTL_MS.
+ *
+ * @author Izaek Kisuule
+ */
+public class ListCache {
+
+    private static final Map<String, AtomicLong> versions = new HashMap<>();
+    private static final Map<String, String[]> dependencies = new HashMap<>();
+    private static final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    static {
+        for (String table : TableMetadata.names()) {
+            versions.put(table, new AtomicLong());
+            dependencies.put(table, new String[]{table});
+        }
+        dependencies.put("Rentals", new String[]{"Rentals", "Customers", "Cars"});
+    }
+
+    /**
+     * Marks a table as changed. Must be called after the write is committed.
+     *
+     * @param table the protocol table name, e.g. "Cars"
+     */
+    public static void bump(String table) {
+        AtomicLong version = versions.get(table);
+        if (version != null) {
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the combined version of every table a LIST response is built from.
+     * Versions only grow, so the sum changes whenever any of them changes.
+     * Take the snapshot before querying the database.
+     *
+     * @param table the protocol table name
+     * @return the snapshot, or -1 if the table is unknown or caching is disabled
+     */
+    public static long snapshot(String table) {
+        String[] tables = dependencies.get(table);
+        if (tables == null || !ServerConfig.LIST_CACHE_ENABLED) {
+            return -1;
+        }
+        long sum = 0;
+        for (String dependency : tables) {
+            sum += versions.get(dependency).get();
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the cached response if it was built at the given snapshot and has not expired.
+     *
+     * @param table the protocol table name
+     * @param snapshot the current value of snapshot(table)
+     * @return the encoded response line, or null on a miss
+     */
+    public static byte[] get(String table, long snapshot) {
+        Entry entry = entries.get(table);
+        return entry != null && entry.snapshot == snapshot && !entry.expired() ? entry.bytes : null;
+    }
+
+    /**
+     * Stores a freshly built response for the snapshot taken before it was queried.
+     *
+     * @param table the protocol table name
+     * @param snapshot the snapshot taken before the database read
+     * @param bytes the encoded response line; must not be modified afterwards
+     */
+    public static void put(String table, long snapshot, byte[] bytes) {
+        if (snapshot >= 0) {
+            // A slow build that started earlier must not replace a newer response, unless that one expired
+            entries.merge(table, new Entry(snapshot, bytes),
+                    (current, fresh) -> fresh.snapshot >= current.snapshot || current.expired() ? fresh : current);
+        }
+    }
+
+    private static final class Entry {
+        final long snapshot;
+        final byte[] bytes;
+        final long insertedNanos = System.nanoTime();
+
+        Entry(long snapshot, byte[] bytes) {
+            this.snapshot = snapshot;
+            this.bytes = bytes;
+        }
+
+        boolean expired() {
+            long ttl = ServerConfig.LIST_CACHE_TTL_MS;
+            return ttl > 0 && System.nanoTime() - insertedNanos > TimeUnit.MILLISECONDS.toNanos(ttl);
+        }
+    }
+}
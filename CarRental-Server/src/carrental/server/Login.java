@@ -5,7 +5,6 @@
 package carrental.server;
 
 import javax.swing.JOptionPane;
-import java.sql.*;
 
 /**
  *
@@ -125,21 +124,14 @@ public class Login extends javax.swing.JFrame {
             JOptionPane.showMessageDialog(this, "Please fill in the fileds ");
             return;
         }
-        try(Connection conn = DbConnection.getConnection()){
-            String sql = "SELECT * FROM employees_login where email = ? AND password_hash = ? ";
-            PreparedStatement pst = conn.prepareStatement(sql);
-            
-            pst.setString(1, email);
-            pst.setString(2, pasword);
-            
-            ResultSet rs = pst.executeQuery();
-            if(rs.next()){
-                JOptionPane.showMessageDialog(this, "You  are logged in! Welcome ");
-                new Dashboard().setVisible(true);
-                this.dispose();
-            }
+        try{
+            // Checks the salted hash (and upgrades a plain-text password) like AUTH does
+            Authenticator.verify(email, pasword);
+            JOptionPane.showMessageDialog(this, "You  are logged in! Welcome ");
+            new Dashboard().setVisible(true);
+            this.dispose();
         }catch(Exception ex){
-            JOptionPane.showMessageDialog(this, "Database Error: "+ ex.getMessage());
+            JOptionPane.showMessageDialog(this, "Login failed: "+ ex.getMessage());
         }
     }//GEN-LAST:event_BtnloginActionPerformed
 
@@ -0,0 +1,447 @@
+/*
+ * Car Rental Server
+ * Non-blocking transport for the ACTION|TABLE|DATA protocol
+ */
+package carrental.server;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NioServer - Server Module
+ * Selector based front end for the Car Rental Server (ServerConfig.MODE = "nio").
+ * A single selector thread accepts clients and reads newline-delimited requests
+ * through one reusable ByteBuffer; complete requests are handed to the bounded
+ * RequestExecutor that runs the existing ClientHandler.processRequest logic.
+ * Idle clients therefore cost no thread at all, only a small Connection object.
+ * Untagged requests of one client are answered strictly in the order they were sent;
+ * tagged requests (#id|ACTION|TABLE|DATA) run concurrently, up to
+ * ServerConfig.MAX_PIPELINED_PER_CLIENT per client, and are answered as they complete.
+ * Clients that send HELLO|BINARY continue with BinaryProtocol frames. A client that
+ * shuts down its output still receives the answers to everything it sent.
+ *
+ * @author Izaek Kisuule
+ */
+public class NioServer {
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    /** Requests queued per client before the server stops reading from its socket. */
+    private static final int MAX_PENDING_PER_CLIENT = 64;
+
+    /** STREAM frames per client queued but not yet written before the producing worker waits. */
+    private static final int MAX_UNFLUSHED_FRAMES = 4;
+
+    private final int port;
+    private final Selector selector;
+    private final RequestExecutor executor;
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private final Queue<Completion> completions = new ConcurrentLinkedQueue<>();
+    private ServerSocketChannel serverChannel;
+    private SelectionKey acceptKey;
+    private int clientCount;
+    private int openConnections;
+
+    /**
+     * Creates a new NIO server for the given port.
+     *
+     * @param port the TCP port to listen on
+     * @param executor bounded stage that runs the requests
+     * @throws IOException if the selector cannot be opened
+     */
+    public NioServer(int port, RequestExecutor executor) throws IOException {
+        this.port = port;
+        this.selector = Selector.open();
+        this.executor = executor;
+    }
+
+    /**
+     * Runs the selector loop until the server socket fails.
+     *
+     * @throws IOException if the server socket cannot be bound
+     */
+    public void run() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        acceptKey = serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        try {
+            while (serverChannel.isOpen()) {
+                selector.select();
+                drainCompletions();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            read(connection);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(connection);
+                        }
+                    } catch (IOException e) {
+                        System.err.println("Client #" + connection.clientId + " error: " + e.getMessage());
+                        close(connection);
+                    }
+                }
+            }
+        } finally {
+            selector.close();
+            serverChannel.close();
+        }
+    }
+
+    /**
+     * Accepts a pending client and registers it for reading.
+     * Stops accepting while ServerConfig.MAX_CONNECTIONS clients are connected.
+     */
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+        clientCount++;
+        openConnections++;
+        System.out.println("Client #" + clientCount + " connected from: "
+                + channel.socket().getInetAddress().getHostAddress());
+
+        Connection connection = new Connection(channel, clientCount, executor);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+
+        if (openConnections >= ServerConfig.MAX_CONNECTIONS) {
+            acceptKey.interestOps(0);
+        }
+    }
+
+    /**
+     * Reads available bytes from the client and splits them into request lines,
+     * or into request frames once the client has switched with HELLO|BINARY.
+     *
+     * @param connection the client connection
+     * @throws IOException if reading from the socket fails
+     */
+    private void read(Connection connection) throws IOException {
+        readBuffer.clear();
+        ServerEvents.SocketRead event = new ServerEvents.SocketRead();
+        event.begin();
+        int count = connection.channel.read(readBuffer);
+        if (count < 0) {
+            // The client may have only shut down its output: answer what it sent, then close
+            connection.inputClosed = true;
+            connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_READ);
+            if (!connection.binary && connection.lineLength > 0) {
+                connection.pending.add(connection.handler.parseLine(connection.takeLine()));
+            }
+            dispatchNext(connection);
+            closeIfDone(connection);
+            return;
+        }
+        event.clientId = connection.clientId;
+        event.bytes = count;
+        event.commit();
+        readBuffer.flip();
+
+        while (readBuffer.hasRemaining() && !connection.binary) {
+            byte b = readBuffer.get();
+            if (b == '\n') {
+                String line = connection.takeLine();
+                connection.pending.add(connection.handler.parseLine(line));
+                connection.binary = line.equals(BinaryProtocol.HELLO);
+            } else {
+                connection.append(b);
+            }
+        }
+        if (connection.binary) {
+            while (readBuffer.hasRemaining()) {
+                connection.append(readBuffer.get());
+            }
+            takeFrames(connection);
+        }
+
+        if (connection.lineLength > ServerConfig.MAX_REQUEST_BYTES) {
+            throw new IOException("Request exceeds " + ServerConfig.MAX_REQUEST_BYTES + " bytes");
+        }
+        if (connection.pending.size() >= MAX_PENDING_PER_CLIENT) {
+            // Back-pressure: stop reading until the worker pool catches up
+            connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_READ);
+        }
+        dispatchNext(connection);
+    }
+
+    /**
+     * Moves every complete binary frame from the connection's buffer to its pending calls.
+     *
+     * @param connection the client connection
+     * @throws IOException if a frame is malformed
+     */
+    private void takeFrames(Connection connection) throws IOException {
+        int position = 0;
+        while (connection.lineLength - position >= 4) {
+            int length = BinaryProtocol.readInt(connection.line, position);
+            BinaryProtocol.checkLength(length);
+            if (connection.lineLength - position - 4 < length) {
+                break;
+            }
+            BinaryProtocol.Request request = BinaryProtocol.decode(connection.line, position + 4, length);
+            connection.pending.add(connection.handler.parseFrame(request));
+            position += 4 + length;
+        }
+        // Keep the incomplete rest at the start of the buffer
+        System.arraycopy(connection.line, position, connection.line, 0, connection.lineLength - position);
+        connection.lineLength -= position;
+    }
+
+    /**
+     * Hands queued requests of a client to the worker pool. Tagged requests are
+     * dispatched while fewer than MAX_PIPELINED_PER_CLIENT are in progress; an
+     * untagged request waits until nothing else is in progress and then runs alone.
+     *
+     * @param connection the client connection
+     */
+    private void dispatchNext(Connection connection) {
+        while (!connection.exclusive && !connection.pending.isEmpty()) {
+            ClientHandler.Call call = connection.pending.peek();
+            if (call.ordered ? connection.inFlight > 0 : connection.inFlight >= ServerConfig.MAX_PIPELINED_PER_CLIENT) {
+                return;
+            }
+            connection.pending.poll();
+            connection.inFlight++;
+            connection.exclusive = call.ordered;
+
+            if (connection.pending.size() < MAX_PENDING_PER_CLIENT && connection.key.isValid()
+                    && !connection.inputClosed) {
+                connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_READ);
+            }
+
+            ClientHandler.ResponseSink sink = frame -> {
+                awaitFrameCredit(connection);
+                completions.add(new Completion(connection, call.framing.apply(frame), false));
+                selector.wakeup();
+            };
+            boolean admitted = executor.submit(call.action, () -> call.work.apply(sink),
+                    response -> {
+                        completions.add(new Completion(connection, call.framing.apply(response), true));
+                        selector.wakeup();
+                    });
+            if (!admitted) {
+                byte[] busy = ClientHandler.toLine(executor.busyResponse());
+                completions.add(new Completion(connection, call.framing.apply(busy), true));
+                selector.wakeup();
+            }
+        }
+    }
+
+    /**
+     * Blocks a worker producing STREAM frames while MAX_UNFLUSHED_FRAMES of them
+     * are still waiting for the client, so a slow reader cannot make the server
+     * buffer a whole table. A client that reads nothing for
+     * ServerConfig.LIST_STREAM_WRITE_TIMEOUT_MS loses its stream, so it cannot hold
+     * the worker and its database connection for long.
+     *
+     * @param connection the client connection
+     * @throws IOException if the client disconnected or stopped reading
+     */
+    private static void awaitFrameCredit(Connection connection) throws IOException {
+        long timeout = ServerConfig.LIST_STREAM_WRITE_TIMEOUT_MS;
+        try {
+            if (timeout <= 0) {
+                connection.frameCredits.acquire();
+            } else if (!connection.frameCredits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Client is not reading");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while streaming");
+        }
+        if (connection.closed) {
+            throw new IOException("Client disconnected");
+        }
+    }
+
+    /**
+     * Queues the responses produced by the workers for writing.
+     * Runs on the selector thread only.
+     */
+    private void drainCompletions() {
+        Completion completion;
+        while ((completion = completions.poll()) != null) {
+            Connection connection = completion.connection;
+            if (completion.last) {
+                connection.inFlight--;
+                connection.exclusive = false;
+            } else {
+                connection.unflushedFrames++;
+            }
+            if (!connection.key.isValid()) {
+                continue;
+            }
+            // Responses are already encoded lines (possibly shared from ListCache): wrap, don't copy
+            connection.writeQueue.add(ByteBuffer.wrap(completion.response));
+            try {
+                write(connection);
+            } catch (IOException e) {
+                System.err.println("Client #" + connection.clientId + " error: " + e.getMessage());
+                close(connection);
+                continue;
+            }
+            dispatchNext(connection);
+        }
+    }
+
+    /**
+     * Writes as much queued response data as the socket accepts and
+     * registers for OP_WRITE if anything is left.
+     *
+     * @param connection the client connection
+     * @throws IOException if writing to the socket fails
+     */
+    private void write(Connection connection) throws IOException {
+        while (!connection.writeQueue.isEmpty()) {
+            ByteBuffer buffer = connection.writeQueue.peek();
+            ServerEvents.SocketWrite event = new ServerEvents.SocketWrite();
+            event.begin();
+            int written = connection.channel.write(buffer);
+            event.clientId = connection.clientId;
+            event.bytes = written;
+            event.commit();
+            if (buffer.hasRemaining()) {
+                connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_WRITE);
+                return;
+            }
+            connection.writeQueue.poll();
+        }
+        connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_WRITE);
+        if (connection.unflushedFrames > 0) {
+            connection.frameCredits.release(connection.unflushedFrames);
+            connection.unflushedFrames = 0;
+        }
+        closeIfDone(connection);
+    }
+
+    /**
+     * Closes a connection whose client has shut down its output once every request
+     * it sent has been answered and written.
+     *
+     * @param connection the client connection
+     */
+    private void closeIfDone(Connection connection) {
+        if (connection.inputClosed && connection.pending.isEmpty() && connection.inFlight == 0
+                && connection.writeQueue.isEmpty()) {
+            close(connection);
+        }
+    }
+
+    /**
+     * Closes a client connection and resumes accepting if the cap was reached.
+     *
+     * @param connection the client connection
+     */
+    private void close(Connection connection) {
+        if (!connection.key.isValid()) {
+            return;
+        }
+        connection.key.cancel();
+        // Wake workers still streaming to this client; they see closed and stop
+        connection.closed = true;
+        connection.frameCredits.release(MAX_UNFLUSHED_FRAMES);
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+        }
+        connection.handler.closeSession();
+        System.out.println("Client #" + connection.clientId + " disconnected");
+
+        openConnections--;
+        if (openConnections < ServerConfig.MAX_CONNECTIONS && acceptKey.isValid()) {
+            acceptKey.interestOps(SelectionKey.OP_ACCEPT);
+        }
+    }
+
+    /**
+     * Per-client state, only touched by the selector thread.
+     */
+    private static final class Connection {
+        final SocketChannel channel;
+        final int clientId;
+        final ClientHandler handler;
+        final Deque<ClientHandler.Call> pending = new ArrayDeque<>();
+        final Deque<ByteBuffer> writeQueue = new ArrayDeque<>();
+        SelectionKey key;
+        /** Requests handed to the worker pool and not yet answered. */
+        int inFlight;
+        /** True while an untagged request runs; nothing else is dispatched meanwhile. */
+        boolean exclusive;
+        /** Set at end of stream; the connection closes once its requests are answered. */
+        boolean inputClosed;
+        /** Set once HELLO|BINARY was read; later bytes are parsed as frames. */
+        boolean binary;
+        /** STREAM frames queued since the write queue was last empty. */
+        int unflushedFrames;
+        final Semaphore frameCredits = new Semaphore(MAX_UNFLUSHED_FRAMES);
+        volatile boolean closed;
+        byte[] line = new byte[256];
+        int lineLength;
+
+        Connection(SocketChannel channel, int clientId, RequestExecutor executor) {
+            this.channel = channel;
+            this.clientId = clientId;
+            this.handler = new ClientHandler(channel.socket(), clientId, executor);
+        }
+
+        void append(byte b) {
+            if (lineLength == line.length) {
+                line = Arrays.copyOf(line, line.length * 2);
+            }
+            line[lineLength++] = b;
+        }
+
+        String takeLine() {
+            int length = lineLength;
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            String request = new String(line, 0, length, StandardCharsets.UTF_8);
+            lineLength = 0;
+            return request;
+        }
+    }
+
+    /**
+     * A response produced by a worker, waiting to be written by the selector thread.
+     * Intermediate STREAM frames have last == false; only the final line ends the request.
+     */
+    private static final class Completion {
+        final Connection connection;
+        final byte[] response;
+        final boolean last;
+
+        Completion(Connection connection, byte[] response, boolean last) {
+            this.connection = connection;
+            this.response = response;
+            this.last = last;
+        }
+    }
+}
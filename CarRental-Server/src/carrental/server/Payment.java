@@ -243,7 +243,7 @@ public class Payment extends javax.swing.JFrame {
     }//GEN-LAST:event_PaymentMtdComboBoxActionPerformed
 
     private void btnPayActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnPayActionPerformed
-        try (Connection conn = DbConnection.getConnection()) {
+        try {
             // Get selected rental
             String rentalStr = Rental_IDComboBox.getSelectedItem().toString();
             int rentalId = Integer.parseInt(rentalStr.split(" - ")[0]);
@@ -252,36 +252,12 @@ public class Payment extends javax.swing.JFrame {
             java.sql.Date payDate = new java.sql.Date(PaymentDateChooser.getDate().getTime());
             String method = PaymentMtdComboBox.getSelectedItem().toString();
 
-            // Insert payment
-            String sql = "INSERT INTO Payments (rental_id, amount, payment_date, payment_method, payment_status) "
-                    + "VALUES (?, ?, ?, ?, 'Completed')";
-            PreparedStatement pst = conn.prepareStatement(sql);
-            pst.setInt(1, rentalId);
-            pst.setDouble(2, amount);
-            pst.setDate(3, payDate);
-            pst.setString(4, method);
-
-            int rows = pst.executeUpdate();
+            // Payment, rental completion and car release commit together
+            Checkout.pay(rentalId, String.valueOf(amount), payDate.toString(), method);
 
-            if (rows > 0) {
-                // Update rental status to completed
-                String updateRental = "UPDATE Rentals SET status = 'Completed' WHERE rental_id = ?";
-                PreparedStatement pstUpdate = conn.prepareStatement(updateRental);
-                pstUpdate.setInt(1, rentalId);
-                pstUpdate.executeUpdate();
-                pstUpdate.close();
-
-                // Update car status back to available
-                String updateCar = "UPDATE Cars c JOIN Rentals r ON c.car_id = r.car_id SET c.status = 'Available' WHERE r.rental_id = ?";
-                PreparedStatement pstCar = conn.prepareStatement(updateCar);
-                pstCar.setInt(1, rentalId);
-                pstCar.executeUpdate();
-                pstCar.close();
-
-                JOptionPane.showMessageDialog(this, "Payment processed successfully!");
-                clearForm();
-                loadRentalIDs(); // refresh rentals combo box
-            }
+            JOptionPane.showMessageDialog(this, "Payment processed successfully!");
+            clearForm();
+            loadRentalIDs(); // refresh rentals combo box
         } catch (Exception e) {
             JOptionPane.showMessageDialog(this, "Error processing payment: " + e.getMessage());
         }
@@ -0,0 +1,108 @@
+/*
+ * Car Rental Server
+ * Typed record encoding used by RECORD responses
+ */
+package carrental.server;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+
+/**
+ * RecordSchema - Server Module
+ * Encodes a row into a compact typed record instead of a comma-joined string,
+ * using the columns and types of the table's TableMetadata.
+ *
+ * Record layout (all varints are LEB128; signed values are zigzag encoded):
+ *   byte column count, null bitmap (one bit per column, LSB first),
+ *   then every non-null column in schema order:
+ *     INT     - signed varint
+ *     DECIMAL - signed varint of the value scaled by 10^DECIMAL_SCALE
+ *     DATE    - signed varint of the epoch day
+ *     STRING  - unsigned varint byte length, then UTF-8 bytes
+ *
+ * The columns are the same, in the same order, as the text FIND response of the
+ * table. The client keeps the same schema and decodes the fields by name.
+ *
+ * @author Izaek Kisuule
+ */
+public final class RecordSchema {
+
+    /** Digits after the decimal point of every DECIMAL column (money amounts). */
+    static final int DECIMAL_SCALE = 2;
+
+    private RecordSchema() {
+    }
+
+    /**
+     * Encodes the current row of a result set.
+     *
+     * @param table the metadata whose columns the row holds
+     * @param rs result set positioned on a row of the table's selectSql
+     * @param out receives the encoded record
+     * @throws SQLException if a column cannot be read
+     */
+    static void encode(TableMetadata table, ResultSet rs, ByteArrayOutputStream out) throws SQLException {
+        TableMetadata.Column[] columns = table.readColumns;
+        Object[] values = new Object[columns.length];
+        byte[] nulls = new byte[(columns.length + 7) / 8];
+        for (int i = 0; i < columns.length; i++) {
+            values[i] = read(rs, i + 1, columns[i].type);
+            if (values[i] == null) {
+                nulls[i >> 3] |= (byte) (1 << (i & 7));
+            }
+        }
+
+        out.write(columns.length);
+        out.write(nulls, 0, nulls.length);
+        for (int i = 0; i < columns.length; i++) {
+            Object value = values[i];
+            if (value == null) {
+                continue;
+            }
+            if (value instanceof byte[]) {
+                byte[] bytes = (byte[]) value;
+                writeVarint(out, bytes.length);
+                out.write(bytes, 0, bytes.length);
+            } else {
+                writeVarint(out, zigzag((Long) value));
+            }
+        }
+    }
+
+    /**
+     * Reads one column as the value that is written to the record:
+     * a Long for INT, DECIMAL and DATE, the UTF-8 bytes for STRING, or null.
+     */
+    private static Object read(ResultSet rs, int index, TableMetadata.Type type) throws SQLException {
+        switch (type) {
+            case INT:
+                long number = rs.getLong(index);
+                return rs.wasNull() ? null : number;
+            case DECIMAL:
+                BigDecimal decimal = rs.getBigDecimal(index);
+                return decimal == null ? null
+                        : decimal.setScale(DECIMAL_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+            case DATE:
+                java.sql.Date date = rs.getDate(index);
+                return date == null ? null : date.toLocalDate().toEpochDay();
+            default:
+                String text = rs.getString(index);
+                return text == null ? null : text.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
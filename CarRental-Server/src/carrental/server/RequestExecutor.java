@@ -0,0 +1,234 @@
+/*
+ * Car Rental Server
+ * Bounded request execution stage with admission control
+ */
+package carrental.server;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.Consumer;
+
+/**
+ * RequestExecutor - Server Module
+ * Runs client requests on a fixed number of worker threads so that at most
+ * ServerConfig.WORKER_THREADS requests (and therefore database connections) are
+ * active at once, no matter how many clients are connected.
+ * Waiting requests are ordered by action priority (interactive FIND/ADD/UPDATE/DELETE
+ * before LIST, LIST before REPORT). Each priority may only use part of the queue, so
+ * when the server saturates the expensive work is shed first.
+ * Rejected or expired requests are answered immediately with BUSY|retry-after-ms.
+ *
+ * @author Izaek Kisuule
+ */
+public class RequestExecutor {
+
+    /**
+     * Scheduling priority of a request, derived from its action.
+     * The share is the fraction of the queue a priority is allowed to fill.
+     */
+    enum Priority {
+        HIGH(1.0), NORMAL(0.75), LOW(0.5);
+
+        final double share;
+
+        Priority(double share) {
+            this.share = share;
+        }
+
+        /**
+         * Maps a protocol action to its priority.
+         *
+         * @param action the ACTION part of a request
+         * @return the scheduling priority
+         */
+        static Priority of(String action) {
+            switch (action) {
+                case "FIND":
+                case "RECORD":
+                case "ADD":
+                case "UPDATE":
+                case "DELETE":
+                case "BATCH":
+                case "STATS":
+                case "RENT":
+                case "PAY":
+                case "AUTH":
+                case "AVAILABLE":
+                    return HIGH;
+                case "REPORT":
+                    return LOW;
+                default:
+                    return NORMAL;
+            }
+        }
+    }
+
+    private static final long MIN_RETRY_AFTER_MS = 50;
+    private static final long MAX_RETRY_AFTER_MS = 5000;
+
+    private final ThreadPoolExecutor workers;
+    private final int queueCapacity;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    /** Approximate exponentially weighted average service time in microseconds. */
+    private volatile long averageServiceMicros = 1000;
+
+    /**
+     * Creates the request stage using the sizes from ServerConfig.
+     */
+    public RequestExecutor() {
+        this(ServerConfig.WORKER_THREADS, ServerConfig.WORKER_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates a request stage with explicit sizes.
+     *
+     * @param threads number of worker threads
+     * @param queueCapacity number of requests allowed to wait for a worker
+     */
+    public RequestExecutor(int threads, int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        this.workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(),
+                Thread.ofPlatform().name("request-worker-", 1).factory());
+    }
+
+    /**
+     * Runs a request on a worker and waits for its response.
+     * Used by the blocking (thread / virtual thread) connection handlers.
+     *
+     * @param action the ACTION part of the request, used for prioritisation
+     * @param task produces the encoded response line
+     * @return the response, or a BUSY response if the request was shed
+     * @throws InterruptedException if the waiting connection thread is interrupted
+     */
+    public byte[] call(String action, Callable<byte[]> task) throws InterruptedException {
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        if (!submit(action, task, result::complete)) {
+            return ClientHandler.toLine(busyResponse());
+        }
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            return ClientHandler.toLine("ERROR|" + e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Queues a request without waiting for it. The callback receives either the
+     * response or a BUSY response if the request expired in the queue.
+     * Used by the NIO transport.
+     *
+     * @param action the ACTION part of the request, used for prioritisation
+     * @param task produces the encoded response line
+     * @param callback receives the response on a worker thread
+     * @return false if the request was not admitted; the callback is not invoked then
+     */
+    public boolean submit(String action, Callable<byte[]> task, Consumer<byte[]> callback) {
+        Priority priority = Priority.of(action);
+        int limit = Math.max(1, (int) (queueCapacity * priority.share));
+
+        int depth = queued.incrementAndGet();
+        if (depth > limit) {
+            queued.decrementAndGet();
+            rejected.incrementAndGet();
+            return false;
+        }
+
+        try {
+            workers.execute(new Task(priority, sequence.incrementAndGet(), task, callback));
+            return true;
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            rejected.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Builds the overload response telling the client how long to back off.
+     * The delay grows with the backlog each worker still has to clear.
+     *
+     * @return response in format BUSY|retry-after-ms
+     */
+    public String busyResponse() {
+        long backlogPerWorker = queued.get() / Math.max(1, workers.getMaximumPoolSize()) + 1;
+        long retryAfter = backlogPerWorker * averageServiceMicros / 1000;
+        retryAfter = Math.max(MIN_RETRY_AFTER_MS, Math.min(MAX_RETRY_AFTER_MS, retryAfter));
+        return "BUSY|" + retryAfter;
+    }
+
+    /**
+     * Returns the number of requests waiting for a worker.
+     *
+     * @return current queue depth
+     */
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    /**
+     * Returns how many requests have been shed since startup.
+     *
+     * @return number of BUSY responses
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Stops accepting requests and lets queued ones finish.
+     */
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    /**
+     * A queued request, ordered by priority first and arrival second.
+     */
+    private final class Task implements Runnable, Comparable<Task> {
+        private final Priority priority;
+        private final long seq;
+        private final long enqueuedNanos = System.nanoTime();
+        private final Callable<byte[]> task;
+        private final Consumer<byte[]> callback;
+
+        Task(Priority priority, long seq, Callable<byte[]> task, Consumer<byte[]> callback) {
+            this.priority = priority;
+            this.seq = seq;
+            this.task = task;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            queued.decrementAndGet();
+
+            long start = System.nanoTime();
+            if (start - enqueuedNanos > TimeUnit.MILLISECONDS.toNanos(ServerConfig.MAX_QUEUE_WAIT_MS)) {
+                // The client has waited too long already; answer fast instead of adding load
+                rejected.incrementAndGet();
+                callback.accept(ClientHandler.toLine(busyResponse()));
+                return;
+            }
+
+            byte[] response;
+            try {
+                response = task.call();
+            } catch (Exception e) {
+                response = ClientHandler.toLine("ERROR|" + e.getMessage());
+            }
+
+            long micros = (System.nanoTime() - start) / 1000;
+            averageServiceMicros += (micros - averageServiceMicros) / 8;
+            callback.accept(response);
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(seq, other.seq);
+        }
+    }
+}
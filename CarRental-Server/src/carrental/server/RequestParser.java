@@ -0,0 +1,211 @@
+/*
+ * Car Rental Server
+ * Single-pass parser for text requests
+ */
+package carrental.server;
+
+/**
+ * RequestParser - Server Module
+ * Parses a text request (ACTION|TABLE|DATA) in one pass over the line, without
+ * regular expressions or intermediate arrays. ACTION and TABLE are resolved to their
+ * BinaryProtocol opcode and table id by comparing regions of the line, so the names
+ * handed to the handlers are the shared constants rather than new substrings.
+ * Numeric DATA (FIND and DELETE ids) is parsed in place.
+ *
+ * A parser is reused for every request a worker thread handles; each parse()
+ * replaces the previous state, so values must be taken before the next parse.
+ *
+ * @author Izaek Kisuule
+ */
+final class RequestParser {
+
+    /** Opcode or table id of a name that is not in the protocol tables. */
+    static final int UNKNOWN = -1;
+
+    private static final ThreadLocal<RequestParser> parsers = ThreadLocal.withInitial(RequestParser::new);
+
+    private String request;
+    private int action;
+    private int table;
+    private int tableStart;
+    private int tableEnd;
+    private int dataStart;
+
+    /**
+     * Returns the parser of the calling thread.
+     *
+     * @return a parser owned by this thread
+     */
+    static RequestParser get() {
+        return parsers.get();
+    }
+
+    /**
+     * Parses a request line.
+     *
+     * @param request the client request string
+     * @return false if the line has no TABLE part (fewer than two '|'-separated parts)
+     */
+    boolean parse(String request) {
+        this.request = request;
+        int actionEnd = request.indexOf('|');
+        if (actionEnd < 0) {
+            action = UNKNOWN;
+            table = UNKNOWN;
+            return false;
+        }
+        tableStart = actionEnd + 1;
+        tableEnd = request.indexOf('|', tableStart);
+        if (tableEnd < 0) {
+            tableEnd = request.length();
+            dataStart = request.length();
+        } else {
+            dataStart = tableEnd + 1;
+        }
+        action = lookup(BinaryProtocol.ACTIONS, request, 0, actionEnd);
+        table = lookup(BinaryProtocol.TABLES, request, tableStart, tableEnd);
+        return true;
+    }
+
+    /** @return the opcode of ACTION in BinaryProtocol.ACTIONS, or UNKNOWN */
+    int action() {
+        return action;
+    }
+
+    /** @return the id of TABLE in BinaryProtocol.TABLES, or UNKNOWN */
+    int table() {
+        return table;
+    }
+
+    /**
+     * Returns the ACTION part; a substring is only created for unknown actions.
+     *
+     * @return the action name
+     */
+    String actionName() {
+        if (action != UNKNOWN) {
+            return BinaryProtocol.ACTIONS[action];
+        }
+        int end = request.indexOf('|');
+        return end < 0 ? request : request.substring(0, end);
+    }
+
+    /**
+     * Returns the TABLE part; a substring is only created for names that are not
+     * tables (e.g. the report type of a REPORT request).
+     *
+     * @return the table name
+     */
+    String tableName() {
+        return table != UNKNOWN ? BinaryProtocol.TABLES[table] : request.substring(tableStart, tableEnd);
+    }
+
+    /**
+     * @return true if the request has a non-empty DATA part
+     */
+    boolean hasData() {
+        return dataStart < request.length();
+    }
+
+    /**
+     * @return the DATA part, or "" if there is none
+     */
+    String data() {
+        return request.substring(dataStart);
+    }
+
+    /**
+     * Returns everything after ACTION|, i.e. TABLE|DATA (used by BATCH).
+     *
+     * @return the request without its action
+     */
+    String afterAction() {
+        return request.substring(tableStart);
+    }
+
+    /**
+     * Parses the DATA part as an integer id without creating a substring.
+     *
+     * @return the id
+     * @throws NumberFormatException if DATA is not an integer
+     */
+    int dataInt() {
+        if (!hasData()) {
+            throw new NumberFormatException("For input string: \"\"");
+        }
+        return Integer.parseInt(request, dataStart, request.length(), 10);
+    }
+
+    /**
+     * Splits the DATA part of an ADD or UPDATE request into its fields, using the
+     * table's TableMetadata separator. On '|'-separated tables (Damages) clients send
+     * pipes inside a value as '¦'. Like String.split, trailing empty fields are dropped.
+     *
+     * @return the field values
+     */
+    String[] fields() {
+        TableMetadata metadata = table != UNKNOWN ? TableMetadata.forTable(BinaryProtocol.TABLES[table]) : null;
+        boolean pipes = metadata != null && metadata.separator == '|';
+        String[] fields = split(request, dataStart, pipes ? '|' : ',');
+        if (pipes) {
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = fields[i].replace('¦', '|');
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Splits a region of a string on a separator character, with the result
+     * String.split would give, into an array of exactly the right size.
+     *
+     * @param text the string
+     * @param start index where the region starts; it ends at the end of the string
+     * @param separator the separator character
+     * @return the parts
+     */
+    static String[] split(String text, int start, char separator) {
+        int end = text.length();
+        while (end > start && text.charAt(end - 1) == separator) {
+            end--;
+        }
+        if (end == start) {
+            return start == text.length() ? new String[]{""} : new String[0];
+        }
+        int count = 1;
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == separator) {
+                count++;
+            }
+        }
+        String[] parts = new String[count];
+        int from = start;
+        for (int i = 0; i < count - 1; i++) {
+            int to = text.indexOf(separator, from);
+            parts[i] = text.substring(from, to);
+            from = to + 1;
+        }
+        parts[count - 1] = text.substring(from, end);
+        return parts;
+    }
+
+    /**
+     * Finds a region of a string in a protocol name table without creating a substring.
+     *
+     * @param names BinaryProtocol.ACTIONS or BinaryProtocol.TABLES
+     * @param request the string holding the name
+     * @param start start of the name
+     * @param end end of the name (exclusive)
+     * @return the index of the name, or UNKNOWN
+     */
+    static int lookup(String[] names, String request, int start, int end) {
+        int length = end - start;
+        for (int i = 1; i < names.length; i++) {
+            String name = names[i];
+            if (name.length() == length && request.startsWith(name, start)) {
+                return i;
+            }
+        }
+        return UNKNOWN;
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Car Rental Server
+ * Per-action and per-table latency statistics
+ */
+package carrental.server;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * RequestStats - Server Module
+ * Keeps a latency histogram, a request and error count, the request and response
+ * sizes, and the heap allocated and CPU time used by the serving thread for every
+ * (action, table) pair, e.g. FIND|Cars or LIST|Rentals. Recording is lock-free:
+ * counters are LongAdders and the histogram is an array of atomic bucket counters,
+ * so request threads never wait for each other or for a reader.
+ *
+ * Allocation and CPU time come from the JVM's per-thread counters
+ * (com.sun.management.ThreadMXBean), read in begin() and again in record() on the
+ * same thread. They are left at 0 when the JVM does not support them, for requests
+ * served on virtual threads, or with -Dcarrental.stats.resourceAccounting=false.
+ *
+ * The histogram is log-linear: every power of two of nanoseconds is split into
+ * SUB_BUCKETS equal buckets, so a reported percentile is at most about 6% above the
+ * real value over the whole range from nanoseconds to minutes, in a fixed amount of memory.
+ *
+ * The statistics are returned by the STATS action and appended to
+ * ServerConfig.STATS_DUMP_FILE every ServerConfig.STATS_DUMP_INTERVAL_SECONDS.
+ *
+ * @author Izaek Kisuule
+ */
+public final class RequestStats {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** Latencies at or above 2^MAX_EXPONENT ns (about 18 minutes) share the last bucket. */
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private static final int TABLES = BinaryProtocol.TABLES.length;
+
+    /** Statistics of [action * TABLES + table]; created on first use. Index 0 holds unknown actions. */
+    private static final AtomicReferenceArray<RequestStats> all =
+            new AtomicReferenceArray<>(BinaryProtocol.ACTIONS.length * TABLES);
+
+    private static final long startNanos = System.nanoTime();
+
+    private static final com.sun.management.ThreadMXBean threads = threadBean();
+
+    /** Allocated bytes and CPU nanoseconds of the current thread when its request began. */
+    private static final ThreadLocal<long[]> begun = ThreadLocal.withInitial(() -> new long[2]);
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder cpuNanos = new LongAdder();
+
+    private RequestStats() {
+    }
+
+    /**
+     * Returns the thread MXBean if it can measure allocation and CPU time per thread,
+     * switching the measurements on, or null if they are unavailable or disabled.
+     */
+    private static com.sun.management.ThreadMXBean threadBean() {
+        if (!ServerConfig.STATS_RESOURCE_ACCOUNTING
+                || !(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!bean.isThreadAllocatedMemorySupported() || !bean.isCurrentThreadCpuTimeSupported()) {
+            return null;
+        }
+        bean.setThreadAllocatedMemoryEnabled(true);
+        bean.setThreadCpuTimeEnabled(true);
+        return bean;
+    }
+
+    /**
+     * Marks the start of a request on the current thread. The thread must call
+     * record() for the request before it begins the next one.
+     *
+     * @return System.nanoTime(), to pass to record()
+     */
+    static long begin() {
+        if (threads != null) {
+            long[] usage = begun.get();
+            usage[0] = threads.getCurrentThreadAllocatedBytes();
+            usage[1] = threads.getCurrentThreadCpuTime();
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a served text request.
+     *
+     * @param request the request line; its ACTION and TABLE select the statistics and
+     *                its length is counted as the bytes received
+     * @param startNanos the value begin() returned on this thread for the request
+     * @param error true if the response was an ERROR
+     * @param responseBytes size of the encoded response
+     */
+    static void record(String request, long startNanos, boolean error, long responseBytes) {
+        long nanos = System.nanoTime() - startNanos;
+        int actionEnd = request.indexOf('|');
+        int action = 0;
+        int table = 0;
+        if (actionEnd >= 0) {
+            action = Math.max(0, RequestParser.lookup(BinaryProtocol.ACTIONS, request, 0, actionEnd));
+            int tableEnd = request.indexOf('|', actionEnd + 1);
+            table = Math.max(0, RequestParser.lookup(BinaryProtocol.TABLES, request, actionEnd + 1,
+                    tableEnd < 0 ? request.length() : tableEnd));
+        }
+        RequestStats stats = forSlot(action * TABLES + table);
+        stats.add(nanos, error, request.length(), responseBytes);
+        if (threads != null) {
+            long[] usage = begun.get();
+            long allocated = threads.getCurrentThreadAllocatedBytes();
+            long cpu = threads.getCurrentThreadCpuTime();
+            // Both are -1 on virtual threads
+            if (allocated >= 0 && usage[0] >= 0) {
+                stats.allocatedBytes.add(allocated - usage[0]);
+            }
+            if (cpu >= 0 && usage[1] >= 0) {
+                stats.cpuNanos.add(cpu - usage[1]);
+            }
+        }
+    }
+
+    private static RequestStats forSlot(int slot) {
+        RequestStats stats = all.get(slot);
+        if (stats == null) {
+            all.compareAndSet(slot, null, new RequestStats());
+            stats = all.get(slot);
+        }
+        return stats;
+    }
+
+    private void add(long nanos, boolean error, long in, long out) {
+        buckets.incrementAndGet(bucketOf(nanos));
+        if (error) {
+            errors.increment();
+        }
+        bytesIn.add(in);
+        bytesOut.add(out);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * Values below SUB_BUCKETS get a bucket each; above that, the top SUB_BUCKET_BITS + 1
+     * bits of the value select the bucket.
+     */
+    private static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) Math.max(0, nanos);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /** Highest latency that falls into a bucket. */
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (sub + 1) * width - 1;
+    }
+
+    /**
+     * Formats all recorded pairs as the data of a STATS response: rows separated by
+     * ';', each row "action,table,count,errors,p50_us,p99_us,p999_us,max_us,per_second,bytes_in,bytes_out,
+     * alloc_bytes_per_request,cpu_us_per_request".
+     * The table is empty for table-independent actions and "?" for unknown ones.
+     * Requests per second are averaged over the server's uptime.
+     *
+     * @return the rows, or "" if nothing was recorded yet
+     */
+    static String snapshot() {
+        double uptimeSeconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+        StringBuilder rows = new StringBuilder();
+        for (int slot = 0; slot < all.length(); slot++) {
+            RequestStats stats = all.get(slot);
+            if (stats != null) {
+                if (rows.length() > 0) {
+                    rows.append(';');
+                }
+                stats.appendRow(slot, uptimeSeconds, rows);
+            }
+        }
+        return rows.toString();
+    }
+
+    private void appendRow(int slot, double uptimeSeconds, StringBuilder row) {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            count += counts[i];
+        }
+        int action = slot / TABLES;
+        row.append(action == 0 ? "?" : BinaryProtocol.ACTIONS[action]).append(',')
+                .append(BinaryProtocol.TABLES[slot % TABLES]).append(',')
+                .append(count).append(',')
+                .append(errors.sum()).append(',')
+                .append(percentileMicros(counts, count, 0.5)).append(',')
+                .append(percentileMicros(counts, count, 0.99)).append(',')
+                .append(percentileMicros(counts, count, 0.999)).append(',')
+                .append(maxNanos.get() / 1000).append(',')
+                .append(String.format(Locale.ROOT, "%.2f", count / uptimeSeconds)).append(',')
+                .append(bytesIn.sum()).append(',')
+                .append(bytesOut.sum()).append(',')
+                .append(count == 0 ? 0 : allocatedBytes.sum() / count).append(',')
+                .append(count == 0 ? 0 : cpuNanos.sum() / count / 1000);
+    }
+
+    private static long percentileMicros(long[] counts, long count, double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * fraction));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBoundOf(i) / 1000;
+            }
+        }
+        return upperBoundOf(counts.length - 1) / 1000;
+    }
+
+    /**
+     * Starts appending a timestamped snapshot to ServerConfig.STATS_DUMP_FILE at a
+     * fixed interval on a daemon thread. Does nothing if the interval is 0 or less.
+     */
+    static void startDump() {
+        long interval = ServerConfig.STATS_DUMP_INTERVAL_SECONDS;
+        if (interval <= 0) {
+            return;
+        }
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "stats-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleAtFixedRate(RequestStats::dump, interval, interval, TimeUnit.SECONDS);
+    }
+
+    private static void dump() {
+        String rows = snapshot();
+        if (rows.isEmpty()) {
+            return;
+        }
+        try (Writer out = new OutputStreamWriter(
+                new FileOutputStream(ServerConfig.STATS_DUMP_FILE, true), StandardCharsets.UTF_8)) {
+            out.write("# " + Instant.now() + System.lineSeparator());
+            out.write("action,table,count,errors,p50_us,p99_us,p999_us,max_us,per_second,bytes_in,bytes_out,"
+                    + "alloc_bytes_per_request,cpu_us_per_request" + System.lineSeparator());
+            for (String row : rows.split(";")) {
+                out.write(row + System.lineSeparator());
+            }
+        } catch (IOException e) {
+            System.err.println("Stats dump error: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Car Rental Server
+ * Central place for tunable server settings
+ */
+package carrental.server;
+
+/**
+ * ServerConfig - Server Module
+ * Runtime settings for the Car Rental Server.
+ * Every value can be overridden with a JVM system property, e.g.
+ * {@code java -Dcarrental.server.mode=virtual -Dcarrental.server.maxConnections=20000 ...}
+ *
+ * @author Izaek Kisuule
+ */
+public final class ServerConfig {
+
+    /** Connection handling mode: one platform thread per client. */
+    public static final String MODE_THREAD = "thread";
+
+    /** Connection handling mode: one virtual thread per client. */
+    public static final String MODE_VIRTUAL = "virtual";
+
+    /** Connection handling mode: non-blocking selector with a bounded worker pool (NioServer). */
+    public static final String MODE_NIO = "nio";
+
+    /** TCP port the server listens on. */
+    public static final int PORT = Integer.getInteger("carrental.server.port", 5000);
+
+    /** Connection handling mode, one of {@link #MODE_THREAD}, {@link #MODE_VIRTUAL} or {@link #MODE_NIO}. */
+    public static final String MODE = System.getProperty("carrental.server.mode", MODE_THREAD);
+
+    /**
+     * Maximum number of clients served at the same time.
+     * Further connections wait in the accept backlog until a slot is released.
+     */
+    public static final int MAX_CONNECTIONS = Integer.getInteger("carrental.server.maxConnections", 10000);
+
+    /**
+     * When true, virtual threads that block while pinned to their carrier
+     * (e.g. inside a synchronized block around a JDBC call) are reported on stdout.
+     */
+    public static final boolean TRACE_PINNING = Boolean.getBoolean("carrental.server.tracePinning");
+
+    /**
+     * Number of worker threads that execute requests (RequestExecutor).
+     * Also the upper bound on requests touching the database at the same time.
+     */
+    public static final int WORKER_THREADS = Integer.getInteger("carrental.server.workerThreads",
+            Runtime.getRuntime().availableProcessors() * 4);
+
+    /** Requests that may wait for a free worker before new ones are answered with BUSY. */
+    public static final int WORKER_QUEUE_CAPACITY = Integer.getInteger("carrental.server.workerQueueCapacity", 1000);
+
+    /** Requests that waited longer than this for a worker are answered with BUSY instead of run. */
+    public static final long MAX_QUEUE_WAIT_MS = Long.getLong("carrental.server.maxQueueWaitMs", 2000L);
+
+    /** Longest request line accepted in NIO mode; longer requests close the connection. */
+    public static final int MAX_REQUEST_BYTES = Integer.getInteger("carrental.server.maxRequestBytes", 1024 * 1024);
+
+    /**
+     * Tagged (#id|...) requests of one connection that may be in progress at once.
+     * Further requests are not read from the socket until a response has been sent.
+     */
+    public static final int MAX_PIPELINED_PER_CLIENT = Integer.getInteger("carrental.server.maxPipelined", 16);
+
+    /** Page size of a paged LIST (LIST|TABLE|limit,after_id,sort) that leaves limit empty. */
+    public static final int LIST_DEFAULT_PAGE_SIZE = Integer.getInteger("carrental.server.listPageSize", 100);
+
+    /** Largest page a paged LIST may request. */
+    public static final int LIST_MAX_PAGE_SIZE = Integer.getInteger("carrental.server.listMaxPageSize", 1000);
+
+    /** Rows a STREAM request fetches from MySQL per round trip (server-side cursor). */
+    public static final int LIST_STREAM_FETCH_SIZE = Integer.getInteger("carrental.server.streamFetchSize", 500);
+
+    /** Approximate size in characters of one CHUNK frame of a STREAM response. */
+    public static final int LIST_STREAM_CHUNK_CHARS = Integer.getInteger("carrental.server.streamChunkChars", 32 * 1024);
+
+    /**
+     * How long a STREAM waits for a client that stops reading before it is abandoned (the
+     * blocking modes close the connection); the waiting worker keeps its database
+     * connection meanwhile. 0 waits forever.
+     */
+    public static final long LIST_STREAM_WRITE_TIMEOUT_MS = Long.getLong("carrental.server.streamWriteTimeoutMs", 5_000L);
+
+    /** File the RequestStats snapshot is appended to. */
+    public static final String STATS_DUMP_FILE = System.getProperty("carrental.stats.file", "carrental-stats.log");
+
+    /** Seconds between RequestStats dumps; 0 disables the dump (STATS still works). */
+    public static final long STATS_DUMP_INTERVAL_SECONDS = Long.getLong("carrental.stats.intervalSeconds", 60L);
+
+    /** Whether RequestStats measures the heap allocated and CPU time used by each request. */
+    public static final boolean STATS_RESOURCE_ACCOUNTING =
+            !"false".equals(System.getProperty("carrental.stats.resourceAccounting"));
+
+    /** Access log file written by AccessLog; "off" disables the access log. */
+    public static final String ACCESS_LOG_FILE = System.getProperty("carrental.log.accessFile", "carrental-access.log");
+
+    /** Fraction of successful requests written to the access log; errors and BUSY are always written. */
+    public static final double ACCESS_LOG_SAMPLE_RATE =
+            Double.parseDouble(System.getProperty("carrental.log.sampleRate", "1.0"));
+
+    /** Characters of each request and response kept in an access log line. */
+    public static final int ACCESS_LOG_MAX_PAYLOAD_CHARS = Integer.getInteger("carrental.log.maxPayload", 256);
+
+    /** Size at which the access log is rotated to file.1. */
+    public static final long ACCESS_LOG_MAX_FILE_BYTES = Long.getLong("carrental.log.maxFileBytes", 10L * 1024 * 1024);
+
+    /** Rotated access log files kept (file.1 ... file.n). */
+    public static final int ACCESS_LOG_MAX_FILES = Integer.getInteger("carrental.log.maxFiles", 5);
+
+    /** Access log entries that may wait for the writer thread before new ones are dropped. */
+    public static final int ACCESS_LOG_BUFFER_ENTRIES = Integer.getInteger("carrental.log.bufferEntries", 8192);
+
+    /** Upper bound on open MySQL connections held by DbConnection's pool. */
+    public static final int DB_MAX_POOL_SIZE = Integer.getInteger("carrental.db.maxPoolSize", WORKER_THREADS);
+
+    /** Number of idle connections the pool keeps open and warm. */
+    public static final int DB_MIN_IDLE = Integer.getInteger("carrental.db.minIdle", 2);
+
+    /** How long getConnection() waits for a free connection before failing. */
+    public static final long DB_BORROW_TIMEOUT_MS = Long.getLong("carrental.db.borrowTimeoutMs", 5000L);
+
+    /** Idle connections above DB_MIN_IDLE are closed after this long unused. */
+    public static final long DB_IDLE_TIMEOUT_MS = Long.getLong("carrental.db.idleTimeoutMs", 600_000L);
+
+    /** Connections borrowed for longer than this are reported as leaks; 0 disables the check. */
+    public static final long DB_LEAK_THRESHOLD_MS = Long.getLong("carrental.db.leakThresholdMs", 60_000L);
+
+    /** Also capture the stack of every borrow, to print it with a leak report; costly, for debugging only. */
+    public static final boolean DB_LEAK_TRACE = Boolean.getBoolean("carrental.db.leakTrace");
+
+    /** Prepared statements cached per pooled connection; 0 disables the cache. */
+    public static final int DB_STATEMENT_CACHE_SIZE = Integer.getInteger("carrental.db.statementCacheSize", 64);
+
+    /** Statements that run at least this long are written to the slow query log; 0 disables it. */
+    public static final long SLOW_QUERY_MS = Long.getLong("carrental.db.slowQueryMs", 200L);
+
+    /** File the slow query log is appended to. */
+    public static final String SLOW_QUERY_LOG_FILE = System.getProperty("carrental.db.slowQueryLog",
+            "carrental-slow-query.log");
+
+    /** Locks RENT uses to serialize rentals of the same car; more stripes, fewer unrelated waits. */
+    public static final int RENT_LOCK_STRIPES = Integer.getInteger("carrental.rent.lockStripes", 64);
+
+    /** PBKDF2 iterations for new password hashes; existing hashes keep the count they were made with. */
+    public static final int AUTH_PBKDF2_ITERATIONS = Integer.getInteger("carrental.auth.pbkdf2Iterations", 120_000);
+
+    /** Sessions opened by AUTH that see no request for this long are closed; 0 keeps them open. */
+    public static final long SESSION_IDLE_TIMEOUT_MS = Long.getLong("carrental.session.idleTimeoutMs", 30 * 60_000L);
+
+    /** Average requests per second one session may send; 0 disables the limit. */
+    public static final int SESSION_RATE_PER_SECOND = Integer.getInteger("carrental.session.ratePerSecond", 100);
+
+    /** Requests one session may send at once before SESSION_RATE_PER_SECOND applies. */
+    public static final int SESSION_RATE_BURST = Integer.getInteger("carrental.session.rateBurst", 200);
+
+    /** Seconds between full reloads of the AvailabilityIndex, for changes made outside requests; 0 disables them. */
+    public static final long AVAILABILITY_RELOAD_SECONDS = Long.getLong("carrental.availability.reloadSeconds", 300L);
+
+    /** Lifetime of cached FIND responses (EntityCache); 0 disables the cache. */
+    public static final long ENTITY_CACHE_TTL_MS = Long.getLong("carrental.cache.entityTtlMs", 60_000L);
+
+    /** Maximum cached rows per table before the least recently hit ones are evicted. */
+    public static final int ENTITY_CACHE_MAX_ENTRIES = Integer.getInteger("carrental.cache.entityMaxEntries", 10_000);
+
+    /** Serve repeated LIST requests from ListCache until one of their tables changes. */
+    public static final boolean LIST_CACHE_ENABLED = !Boolean.getBoolean("carrental.cache.disableList");
+
+    /** Lifetime of cached LIST responses, for changes made outside requests; 0 keeps them until a table changes. */
+    public static final long LIST_CACHE_TTL_MS = Long.getLong("carrental.cache.listTtlMs", 60_000L);
+
+    private ServerConfig() {
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Car Rental Server
+ * Java Flight Recorder events of the request lifecycle
+ */
+package carrental.server;
+
+import jdk.jfr.*;
+
+/**
+ * ServerEvents - Server Module
+ * Custom Java Flight Recorder events for the stages of a request: socket read,
+ * parse, database connection acquire, statement execute, response encode, socket
+ * write and PDF report rendering. The events cost next to nothing while no
+ * recording is running, so they are always compiled in. To see where slow requests
+ * spend their time, start the server with
+ * {@code -XX:StartFlightRecording=filename=carrental.jfr,settings=profile}
+ * or run {@code jcmd <pid> JFR.start} against a running server, and open the
+ * recording in JDK Mission Control under the "Car Rental" category.
+ *
+ * Socket events run on the connection's thread (or the NIO selector thread); parse,
+ * database, encode and report events run on the request worker that served the request.
+ *
+ * @author Izaek Kisuule
+ */
+public final class ServerEvents {
+
+    private ServerEvents() {
+    }
+
+    @Name("carrental.SocketRead")
+    @Label("Socket Read")
+    @Category({"Car Rental", "Network"})
+    @Description("Reading one request from a client, from its first byte to its last")
+    @StackTrace(false)
+    static final class SocketRead extends Event {
+        @Label("Client")
+        int clientId;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("carrental.RequestParse")
+    @Label("Request Parse")
+    @Category({"Car Rental", "Request"})
+    @StackTrace(false)
+    static final class RequestParse extends Event {
+        @Label("Action")
+        String action;
+
+        @Label("Table")
+        String table;
+    }
+
+    @Name("carrental.ConnectionAcquire")
+    @Label("DB Connection Acquire")
+    @Category({"Car Rental", "Database"})
+    @Description("Borrowing a connection from the DbConnection pool")
+    @StackTrace(false)
+    static final class ConnectionAcquire extends Event {
+        @Label("New Connection")
+        boolean created;
+
+        @Label("Timed Out")
+        boolean timedOut;
+    }
+
+    @Name("carrental.StatementExecute")
+    @Label("Statement Execute")
+    @Category({"Car Rental", "Database"})
+    @StackTrace(false)
+    static final class StatementExecute extends Event {
+        @Label("SQL")
+        String sql;
+
+        @Label("Method")
+        String method;
+
+        @Label("Cached Statement")
+        boolean cached;
+    }
+
+    @Name("carrental.ResponseEncode")
+    @Label("Response Encode")
+    @Category({"Car Rental", "Request"})
+    @Description("Encoding a response as a UTF-8 line")
+    @StackTrace(false)
+    static final class ResponseEncode extends Event {
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("carrental.SocketWrite")
+    @Label("Socket Write")
+    @Category({"Car Rental", "Network"})
+    @StackTrace(false)
+    static final class SocketWrite extends Event {
+        @Label("Client")
+        int clientId;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("carrental.ReportRender")
+    @Label("Report Render")
+    @Category({"Car Rental", "Reports"})
+    @Description("Querying and rendering one PDF report")
+    @StackTrace(false)
+    static final class ReportRender extends Event {
+        @Label("Report")
+        String report;
+
+        @Label("Success")
+        boolean success;
+    }
+}
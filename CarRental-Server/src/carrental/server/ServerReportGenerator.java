@@ -5,6 +5,7 @@ import com.itextpdf.text.pdf.*;
 import java.io.FileOutputStream;
 import java.sql.*;
 import java.text.SimpleDateFormat;
+import java.util.function.Supplier;
 
 /**
  * ServerReportGenerator - Server Module
@@ -16,6 +17,23 @@ import java.text.SimpleDateFormat;
  */
 public class ServerReportGenerator {
 
+    /**
+     * Runs one report and records it as a ReportRender JFR event.
+     * 
+     * @param report the report type
+     * @param render builds the PDF and returns the response
+     * @return the response of render
+     */
+    private static String rendered(String report, Supplier<String> render) {
+        ServerEvents.ReportRender event = new ServerEvents.ReportRender();
+        event.begin();
+        String result = render.get();
+        event.report = report;
+        event.success = result.startsWith("SUCCESS|");
+        event.commit();
+        return result;
+    }
+
     // === 1. Customer Report ===
     /**
      * Generates a PDF report of all customers.
@@ -23,6 +41,10 @@ public class ServerReportGenerator {
      * @return success message with filename or error message
      */
     public static String generateCustomerReport() {
+        return rendered("CUSTOMER", ServerReportGenerator::renderCustomerReport);
+    }
+
+    private static String renderCustomerReport() {
         try {
             String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new java.util.Date());
             String filename = "CustomerReport_" + timestamp + ".pdf";
@@ -64,26 +86,26 @@ public class ServerReportGenerator {
             }
 
             // Data
-            Connection conn = DbConnection.getConnection();
-            ResultSet rs = conn.createStatement().executeQuery("SELECT * FROM Customers ORDER BY customer_id");
+            try (Connection conn = DbConnection.getConnection()) {
+                ResultSet rs = conn.createStatement().executeQuery("SELECT * FROM Customers ORDER BY customer_id");
             
-            int count = 0;
-            while (rs.next()) {
-                table.addCell(String.valueOf(rs.getInt("customer_id")));
-                table.addCell(rs.getString("first_name") + " " + rs.getString("last_name"));
-                table.addCell(rs.getString("email") != null ? rs.getString("email") : "N/A");
-                table.addCell(rs.getString("phone_number") != null ? rs.getString("phone_number") : "N/A");
-                table.addCell(rs.getString("address") != null ? rs.getString("address") : "N/A");
-                count++;
-            }
+                int count = 0;
+                while (rs.next()) {
+                    table.addCell(String.valueOf(rs.getInt("customer_id")));
+                    table.addCell(rs.getString("first_name") + " " + rs.getString("last_name"));
+                    table.addCell(rs.getString("email") != null ? rs.getString("email") : "N/A");
+                    table.addCell(rs.getString("phone_number") != null ? rs.getString("phone_number") : "N/A");
+                    table.addCell(rs.getString("address") != null ? rs.getString("address") : "N/A");
+                    count++;
+                }
 
-            doc.add(table);
-            doc.add(new Paragraph("\n"));
-            doc.add(new Paragraph("Total Customers: " + count, FontFactory.getFont(FontFactory.HELVETICA_BOLD, 12)));
+                doc.add(table);
+                doc.add(new Paragraph("\n"));
+                doc.add(new Paragraph("Total Customers: " + count, FontFactory.getFont(FontFactory.HELVETICA_BOLD, 12)));
             
-            doc.close();
-            rs.close();
-            conn.close();
+                doc.close();
+                rs.close();
+            }
             
             return "SUCCESS|Customer Report generated successfully: " + filename;
         } catch (Exception e) {
@@ -98,6 +120,10 @@ public class ServerReportGenerator {
      * @return success message with filename or error message
      */
     public static String generateCarReport() {
+        return rendered("CAR", ServerReportGenerator::renderCarReport);
+    }
+
+    private static String renderCarReport() {
         try {
             String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new java.util.Date());
             String filename = "CarReport_" + timestamp + ".pdf";
@@ -137,36 +163,36 @@ public class ServerReportGenerator {
             }
 
             // Data
-            Connection conn = DbConnection.getConnection();
-            ResultSet rs = conn.createStatement().executeQuery("SELECT * FROM Cars ORDER BY car_id");
+            try (Connection conn = DbConnection.getConnection()) {
+                ResultSet rs = conn.createStatement().executeQuery("SELECT * FROM Cars ORDER BY car_id");
             
-            int count = 0;
-            int availableCount = 0;
-            while (rs.next()) {
-                table.addCell(String.valueOf(rs.getInt("car_id")));
-                table.addCell(rs.getString("make"));
-                table.addCell(rs.getString("model"));
-                table.addCell(String.valueOf(rs.getInt("year")));
-                table.addCell(rs.getString("license_plate"));
-                table.addCell("$" + String.format("%.2f", rs.getDouble("rental_rate")));
+                int count = 0;
+                int availableCount = 0;
+                while (rs.next()) {
+                    table.addCell(String.valueOf(rs.getInt("car_id")));
+                    table.addCell(rs.getString("make"));
+                    table.addCell(rs.getString("model"));
+                    table.addCell(String.valueOf(rs.getInt("year")));
+                    table.addCell(rs.getString("license_plate"));
+                    table.addCell("$" + String.format("%.2f", rs.getDouble("rental_rate")));
                 
-                String status = rs.getString("status");
-                table.addCell(status);
+                    String status = rs.getString("status");
+                    table.addCell(status);
                 
-                count++;
-                if ("Available".equalsIgnoreCase(status)) {
-                    availableCount++;
+                    count++;
+                    if ("Available".equalsIgnoreCase(status)) {
+                        availableCount++;
+                    }
                 }
-            }
 
-            doc.add(table);
-            doc.add(new Paragraph("\n"));
-            doc.add(new Paragraph("Total Cars: " + count + " | Available: " + availableCount, 
-                    FontFactory.getFont(FontFactory.HELVETICA_BOLD, 12)));
+                doc.add(table);
+                doc.add(new Paragraph("\n"));
+                doc.add(new Paragraph("Total Cars: " + count + " | Available: " + availableCount, 
+                        FontFactory.getFont(FontFactory.HELVETICA_BOLD, 12)));
             
-            doc.close();
-            rs.close();
-            conn.close();
+                doc.close();
+                rs.close();
+            }
             
             return "SUCCESS|Car Report generated successfully: " + filename;
         } catch (Exception e) {
@@ -183,6 +209,10 @@ public class ServerReportGenerator {
      * @return success message with filename or error message
      */
     public static String generateRentalReport(String startDate, String endDate) {
+        return rendered("RENTAL", () -> renderRentalReport(startDate, endDate));
+    }
+
+    private static String renderRentalReport(String startDate, String endDate) {
         try {
             String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new java.util.Date());
             String filename = "RentalReport_" + timestamp + ".pdf";
@@ -227,49 +257,49 @@ public class ServerReportGenerator {
             }
 
             // Data
-            Connection conn = DbConnection.getConnection();
-            String sql = "SELECT r.rental_id, CONCAT(c.first_name,' ',c.last_name) AS customer, "
-                    + "CONCAT(car.make,' ',car.model) AS car, "
-                    + "CONCAT(e.first_name,' ',e.last_name) AS employee, "
-                    + "r.start_date, r.end_date, r.total_amount, r.status "
-                    + "FROM Rentals r "
-                    + "JOIN Customers c ON r.customer_id=c.customer_id "
-                    + "JOIN Cars car ON r.car_id=car.car_id "
-                    + "JOIN Employees_login e ON r.employee_id=e.employee_id "
-                    + "WHERE r.start_date >= ? AND r.end_date <= ? "
-                    + "ORDER BY r.rental_id";
-            PreparedStatement pst = conn.prepareStatement(sql);
-            pst.setString(1, startDate);
-            pst.setString(2, endDate);
-            ResultSet rs = pst.executeQuery();
-
-            int count = 0;
-            double totalRevenue = 0;
-            while (rs.next()) {
-                table.addCell(String.valueOf(rs.getInt("rental_id")));
-                table.addCell(rs.getString("customer"));
-                table.addCell(rs.getString("car"));
-                table.addCell(rs.getString("employee"));
-                table.addCell(rs.getString("start_date"));
-                table.addCell(rs.getString("end_date"));
+            try (Connection conn = DbConnection.getConnection()) {
+                String sql = "SELECT r.rental_id, CONCAT(c.first_name,' ',c.last_name) AS customer, "
+                        + "CONCAT(car.make,' ',car.model) AS car, "
+                        + "CONCAT(e.first_name,' ',e.last_name) AS employee, "
+                        + "r.start_date, r.end_date, r.total_amount, r.status "
+                        + "FROM Rentals r "
+                        + "JOIN Customers c ON r.customer_id=c.customer_id "
+                        + "JOIN Cars car ON r.car_id=car.car_id "
+                        + "JOIN Employees_login e ON r.employee_id=e.employee_id "
+                        + "WHERE r.start_date >= ? AND r.end_date <= ? "
+                        + "ORDER BY r.rental_id";
+                PreparedStatement pst = conn.prepareStatement(sql);
+                pst.setString(1, startDate);
+                pst.setString(2, endDate);
+                ResultSet rs = pst.executeQuery();
+
+                int count = 0;
+                double totalRevenue = 0;
+                while (rs.next()) {
+                    table.addCell(String.valueOf(rs.getInt("rental_id")));
+                    table.addCell(rs.getString("customer"));
+                    table.addCell(rs.getString("car"));
+                    table.addCell(rs.getString("employee"));
+                    table.addCell(rs.getString("start_date"));
+                    table.addCell(rs.getString("end_date"));
                 
-                double amount = rs.getDouble("total_amount");
-                table.addCell("$" + String.format("%.2f", amount));
-                table.addCell(rs.getString("status"));
+                    double amount = rs.getDouble("total_amount");
+                    table.addCell("$" + String.format("%.2f", amount));
+                    table.addCell(rs.getString("status"));
                 
-                count++;
-                totalRevenue += amount;
-            }
+                    count++;
+                    totalRevenue += amount;
+                }
 
-            doc.add(table);
-            doc.add(new Paragraph("\n"));
-            doc.add(new Paragraph("Total Rentals: " + count + " | Total Revenue: $" + String.format("%.2f", totalRevenue), 
-                    FontFactory.getFont(FontFactory.HELVETICA_BOLD, 12)));
+                doc.add(table);
+                doc.add(new Paragraph("\n"));
+                doc.add(new Paragraph("Total Rentals: " + count + " | Total Revenue: $" + String.format("%.2f", totalRevenue), 
+                        FontFactory.getFont(FontFactory.HELVETICA_BOLD, 12)));
             
-            doc.close();
-            rs.close();
-            pst.close();
-            conn.close();
+                doc.close();
+                rs.close();
+                pst.close();
+            }
             
             return "SUCCESS|Rental Report generated successfully: " + filename;
         } catch (Exception e) {
@@ -284,6 +314,10 @@ public class ServerReportGenerator {
      * @return success message with filename or error message
      */
     public static String generatePaymentReport() {
+        return rendered("PAYMENT", ServerReportGenerator::renderPaymentReport);
+    }
+
+    private static String renderPaymentReport() {
         try {
             String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new java.util.Date());
             String filename = "PaymentReport_" + timestamp + ".pdf";
@@ -323,33 +357,33 @@ public class ServerReportGenerator {
             }
 
             // Data
-            Connection conn = DbConnection.getConnection();
-            ResultSet rs = conn.createStatement().executeQuery("SELECT * FROM Payments ORDER BY payment_id");
+            try (Connection conn = DbConnection.getConnection()) {
+                ResultSet rs = conn.createStatement().executeQuery("SELECT * FROM Payments ORDER BY payment_id");
             
-            int count = 0;
-            double totalAmount = 0;
-            while (rs.next()) {
-                table.addCell(String.valueOf(rs.getInt("payment_id")));
-                table.addCell(String.valueOf(rs.getInt("rental_id")));
+                int count = 0;
+                double totalAmount = 0;
+                while (rs.next()) {
+                    table.addCell(String.valueOf(rs.getInt("payment_id")));
+                    table.addCell(String.valueOf(rs.getInt("rental_id")));
                 
-                double amount = rs.getDouble("amount");
-                table.addCell("$" + String.format("%.2f", amount));
-                table.addCell(rs.getString("payment_date"));
-                table.addCell(rs.getString("payment_method"));
-                table.addCell(rs.getString("payment_status"));
+                    double amount = rs.getDouble("amount");
+                    table.addCell("$" + String.format("%.2f", amount));
+                    table.addCell(rs.getString("payment_date"));
+                    table.addCell(rs.getString("payment_method"));
+                    table.addCell(rs.getString("payment_status"));
                 
-                count++;
-                totalAmount += amount;
-            }
+                    count++;
+                    totalAmount += amount;
+                }
 
-            doc.add(table);
-            doc.add(new Paragraph("\n"));
-            doc.add(new Paragraph("Total Payments: " + count + " | Total Amount: $" + String.format("%.2f", totalAmount), 
-                    FontFactory.getFont(FontFactory.HELVETICA_BOLD, 12)));
+                doc.add(table);
+                doc.add(new Paragraph("\n"));
+                doc.add(new Paragraph("Total Payments: " + count + " | Total Amount: $" + String.format("%.2f", totalAmount), 
+                        FontFactory.getFont(FontFactory.HELVETICA_BOLD, 12)));
             
-            doc.close();
-            rs.close();
-            conn.close();
+                doc.close();
+                rs.close();
+            }
             
             return "SUCCESS|Payment Report generated successfully: " + filename;
         } catch (Exception e) {
@@ -364,6 +398,10 @@ public class ServerReportGenerator {
      * @return success message with filename or error message
      */
     public static String generateMaintenanceReport() {
+        return rendered("MAINTENANCE", ServerReportGenerator::renderMaintenanceReport);
+    }
+
+    private static String renderMaintenanceReport() {
         try {
             String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new java.util.Date());
             String filename = "MaintenanceReport_" + timestamp + ".pdf";
@@ -403,37 +441,37 @@ public class ServerReportGenerator {
             }
 
             // Data
-            Connection conn = DbConnection.getConnection();
-            String sql = "SELECT m.maintenance_id, CONCAT(c.make,' ',c.model,' (',c.license_plate,')') AS car, "
-                    + "m.service_date, m.description, m.cost "
-                    + "FROM VehicleMaintenance m "
-                    + "JOIN Cars c ON m.car_id=c.car_id "
-                    + "ORDER BY m.maintenance_id";
-            ResultSet rs = conn.createStatement().executeQuery(sql);
+            try (Connection conn = DbConnection.getConnection()) {
+                String sql = "SELECT m.maintenance_id, CONCAT(c.make,' ',c.model,' (',c.license_plate,')') AS car, "
+                        + "m.service_date, m.description, m.cost "
+                        + "FROM VehicleMaintenance m "
+                        + "JOIN Cars c ON m.car_id=c.car_id "
+                        + "ORDER BY m.maintenance_id";
+                ResultSet rs = conn.createStatement().executeQuery(sql);
             
-            int count = 0;
-            double totalCost = 0;
-            while (rs.next()) {
-                table.addCell(String.valueOf(rs.getInt("maintenance_id")));
-                table.addCell(rs.getString("car"));
-                table.addCell(rs.getString("service_date"));
-                table.addCell(rs.getString("description"));
+                int count = 0;
+                double totalCost = 0;
+                while (rs.next()) {
+                    table.addCell(String.valueOf(rs.getInt("maintenance_id")));
+                    table.addCell(rs.getString("car"));
+                    table.addCell(rs.getString("service_date"));
+                    table.addCell(rs.getString("description"));
                 
-                double cost = rs.getDouble("cost");
-                table.addCell("$" + String.format("%.2f", cost));
+                    double cost = rs.getDouble("cost");
+                    table.addCell("$" + String.format("%.2f", cost));
                 
-                count++;
-                totalCost += cost;
-            }
+                    count++;
+                    totalCost += cost;
+                }
 
-            doc.add(table);
-            doc.add(new Paragraph("\n"));
-            doc.add(new Paragraph("Total Maintenance Records: " + count + " | Total Cost: $" + String.format("%.2f", totalCost), 
-                    FontFactory.getFont(FontFactory.HELVETICA_BOLD, 12)));
+                doc.add(table);
+                doc.add(new Paragraph("\n"));
+                doc.add(new Paragraph("Total Maintenance Records: " + count + " | Total Cost: $" + String.format("%.2f", totalCost), 
+                        FontFactory.getFont(FontFactory.HELVETICA_BOLD, 12)));
             
-            doc.close();
-            rs.close();
-            conn.close();
+                doc.close();
+                rs.close();
+            }
             
             return "SUCCESS|Maintenance Report generated successfully: " + filename;
         } catch (Exception e) {
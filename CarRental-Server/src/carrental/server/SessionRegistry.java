@@ -0,0 +1,183 @@
+/*
+ * Car Rental Server
+ * Sessions opened by AUTH
+ */
+package carrental.server;
+
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SessionRegistry - Server Module
+ * Holds the sessions of logged-in employees. A session belongs to the connection that
+ * sent AUTH: it has no token, cannot be resumed from another connection, and a client
+ * that reconnects logs in again.
+ *
+ * A session carries what AUTH found out about the employee (id, role and branch), so
+ * the connection that logged in keeps it without re-reading employee rows. It also
+ * counts the employee's requests and limits their rate. Sessions idle for longer than
+ * ServerConfig.SESSION_IDLE_TIMEOUT_MS are removed by a background sweep, and a
+ * session is closed when its connection goes away; either way its totals are logged.
+ *
+ * @author Izaek Kisuule
+ */
+final class SessionRegistry {
+
+    /** Role of an employee without an Active assignment. */
+    static final String DEFAULT_ROLE = "Employee";
+
+    private static final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+
+    static {
+        long idle = ServerConfig.SESSION_IDLE_TIMEOUT_MS;
+        if (idle > 0) {
+            ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "session-expiry");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = Math.max(1000, Math.min(idle / 2, 60_000));
+            timer.scheduleAtFixedRate(SessionRegistry::expireIdle, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * One logged-in employee: who they are, and their request accounting and rate limit.
+     */
+    static final class Session {
+        final int employeeId;
+        final String email;
+        /** assignment_type of the employee's Active assignment, or DEFAULT_ROLE. */
+        final String role;
+        /** branch_id of that assignment, or 0 if there is none. */
+        final int branchId;
+        final long createdMillis;
+        volatile long lastUsedMillis;
+
+        final LongAdder requests = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder throttled = new LongAdder();
+
+        /**
+         * Rate limit as a virtual schedule (generic cell rate algorithm): the nanoTime at
+         * which the next request would be due if requests arrived at exactly the limit.
+         */
+        private final AtomicLong nextDueNanos = new AtomicLong(System.nanoTime());
+
+        Session(int employeeId, String email, String role, int branchId) {
+            this.employeeId = employeeId;
+            this.email = email;
+            this.role = role;
+            this.branchId = branchId;
+            this.createdMillis = System.currentTimeMillis();
+            this.lastUsedMillis = createdMillis;
+        }
+
+        /**
+         * Admits one request of this session, unless it has used up its rate: up to
+         * ServerConfig.SESSION_RATE_BURST requests at once, then
+         * ServerConfig.SESSION_RATE_PER_SECOND on average.
+         *
+         * @return 0 if the request may run, otherwise the milliseconds until it may
+         */
+        long admit() {
+            lastUsedMillis = System.currentTimeMillis();
+            int rate = ServerConfig.SESSION_RATE_PER_SECOND;
+            if (rate <= 0) {
+                return 0;
+            }
+            long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+            long tolerance = interval * Math.max(0, ServerConfig.SESSION_RATE_BURST - 1);
+            while (true) {
+                long now = System.nanoTime();
+                long due = nextDueNanos.get();
+                long start = Math.max(due, now);
+                if (start - now > tolerance) {
+                    throttled.increment();
+                    return Math.max(1, TimeUnit.NANOSECONDS.toMillis(start - now - tolerance));
+                }
+                if (nextDueNanos.compareAndSet(due, start + interval)) {
+                    return 0;
+                }
+            }
+        }
+
+        /**
+         * Counts a request of this session.
+         *
+         * @param failed whether the response was an error
+         */
+        void record(boolean failed) {
+            requests.increment();
+            if (failed) {
+                errors.increment();
+            }
+        }
+
+        boolean expired(long now) {
+            long idle = ServerConfig.SESSION_IDLE_TIMEOUT_MS;
+            return idle > 0 && now - lastUsedMillis > idle;
+        }
+    }
+
+    private SessionRegistry() {
+    }
+
+    /**
+     * Opens a session.
+     *
+     * @param employeeId the authenticated employee
+     * @param email the employee's email
+     * @param role the employee's role
+     * @param branchId the employee's branch, or 0
+     * @return the new session
+     */
+    static Session open(int employeeId, String email, String role, int branchId) {
+        Session session = new Session(employeeId, email, role, branchId);
+        sessions.add(session);
+        return session;
+    }
+
+    /**
+     * Checks that a session is still open; an expired one is closed.
+     *
+     * @param session the session of a connection
+     * @return true if the session is open and has not expired
+     */
+    static boolean live(Session session) {
+        if (!sessions.contains(session)) {
+            return false;
+        }
+        if (session.expired(System.currentTimeMillis())) {
+            close(session, "expired");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Closes a session and logs its totals.
+     *
+     * @param session the session
+     * @param reason why it is closed, for the log
+     */
+    static void close(Session session, String reason) {
+        if (session != null && sessions.remove(session)) {
+            System.out.println("Session of employee #" + session.employeeId + " (" + session.role
+                    + (session.branchId > 0 ? ", branch " + session.branchId : "") + ") " + reason + ": "
+                    + session.requests.sum() + " requests, " + session.errors.sum() + " errors, "
+                    + session.throttled.sum() + " throttled");
+        }
+    }
+
+    private static void expireIdle() {
+        long now = System.currentTimeMillis();
+        for (Session session : sessions) {
+            if (session.expired(now)) {
+                close(session, "expired");
+            }
+        }
+    }
+}
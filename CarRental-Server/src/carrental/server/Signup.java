@@ -243,7 +243,7 @@ public class Signup extends javax.swing.JFrame {
                 pst.setString(3, email);
                 pst.setString(4, phone);
                 pst.setString(5, address);
-                pst.setString(6, password);
+                pst.setString(6, Authenticator.hash(password));
 
                 pst.executeUpdate();
                 JOptionPane.showMessageDialog(this, "Employee Registers Succesfully");
@@ -0,0 +1,154 @@
+/*
+ * Car Rental Server
+ * Slow query log with EXPLAIN plans
+ */
+package carrental.server;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.time.Instant;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SlowQueryLog - Server Module
+ * Receives the statements DbConnection saw run longer than ServerConfig.SLOW_QUERY_MS
+ * and appends them to ServerConfig.SLOW_QUERY_LOG_FILE with their bound parameters
+ * and MySQL's EXPLAIN plan, so a missing index shows up before users notice.
+ *
+ * The request thread only queues the entry. A single background thread runs the
+ * EXPLAIN on a pooled connection, with the same parameter values, and writes the
+ * entry; if that thread falls behind, further entries are counted and dropped.
+ * Parameters are redacted in the file: numbers, dates and NULLs are written as
+ * they are, strings and other values only as their type and length.
+ *
+ * @author Izaek Kisuule
+ */
+public final class SlowQueryLog {
+
+    private static final int QUEUE_CAPACITY = 100;
+
+    private static final AtomicLong dropped = new AtomicLong();
+
+    private static final ThreadPoolExecutor writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(QUEUE_CAPACITY), task -> {
+                Thread thread = new Thread(task, "slow-query-log");
+                thread.setDaemon(true);
+                return thread;
+            }, (task, executor) -> dropped.incrementAndGet());
+
+    private SlowQueryLog() {
+    }
+
+    /**
+     * Queues a slow statement for the log. Never blocks.
+     *
+     * @param sql the statement's SQL
+     * @param method the execute method that was called
+     * @param parameters the bound parameters in order; null for unbound or NULL ones
+     * @param nanos how long the execute took
+     */
+    static void record(String sql, String method, Object[] parameters, long nanos) {
+        // The EXPLAIN statements of this log are traced too; never log them
+        if (sql.regionMatches(true, 0, "EXPLAIN", 0, 7)) {
+            return;
+        }
+        Instant time = Instant.now();
+        writer.execute(() -> write(time, sql, method, parameters, nanos));
+    }
+
+    private static void write(Instant time, String sql, String method, Object[] parameters, long nanos) {
+        StringBuilder entry = new StringBuilder(512);
+        entry.append("# ").append(time)
+                .append(" ms=").append(TimeUnit.NANOSECONDS.toMillis(nanos))
+                .append(' ').append(method);
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            entry.append(" (").append(lost).append(" earlier entries dropped)");
+        }
+        entry.append(System.lineSeparator()).append(sql.trim()).append(System.lineSeparator());
+        if (parameters.length > 0) {
+            entry.append("parameters: ");
+            for (int i = 0; i < parameters.length; i++) {
+                entry.append(i == 0 ? "" : ", ").append(redact(parameters[i]));
+            }
+            entry.append(System.lineSeparator());
+        }
+        explain(sql, parameters, entry);
+        entry.append(System.lineSeparator());
+
+        try (Writer out = new OutputStreamWriter(
+                new FileOutputStream(ServerConfig.SLOW_QUERY_LOG_FILE, true), StandardCharsets.UTF_8)) {
+            out.write(entry.toString());
+        } catch (IOException e) {
+            System.err.println("Slow query log error: " + e.getMessage());
+        }
+    }
+
+    private static String redact(Object value) {
+        if (value == null) {
+            return "NULL";
+        }
+        if (value instanceof Number && !(value instanceof BigDecimal) || value instanceof java.util.Date
+                || value instanceof Boolean) {
+            return value.toString();
+        }
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).toPlainString();
+        }
+        if (value instanceof String) {
+            return "<string " + ((String) value).length() + " chars>";
+        }
+        return "<" + value.getClass().getSimpleName() + ">";
+    }
+
+    /**
+     * Appends MySQL's plan for the statement, one row per table, as column=value pairs.
+     * Only SELECT, INSERT, UPDATE, DELETE and REPLACE statements can be explained.
+     */
+    private static void explain(String sql, Object[] parameters, StringBuilder entry) {
+        String verb = sql.trim();
+        int end = 0;
+        while (end < verb.length() && Character.isLetter(verb.charAt(end))) {
+            end++;
+        }
+        switch (verb.substring(0, end).toUpperCase()) {
+            case "SELECT":
+            case "INSERT":
+            case "UPDATE":
+            case "DELETE":
+            case "REPLACE":
+                break;
+            default:
+                return;
+        }
+
+        try (Connection conn = DbConnection.getConnection()) {
+            // Every EXPLAIN text is different; with the result set type given, DbConnection
+            // prepares it without its statement cache, so it cannot evict the hot statements
+            PreparedStatement pst = conn.prepareStatement("EXPLAIN " + sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            for (int i = 0; i < parameters.length; i++) {
+                pst.setObject(i + 1, parameters[i]);
+            }
+            try (ResultSet rs = pst.executeQuery()) {
+                ResultSetMetaData columns = rs.getMetaData();
+                entry.append("plan:").append(System.lineSeparator());
+                while (rs.next()) {
+                    entry.append(' ');
+                    for (int i = 1; i <= columns.getColumnCount(); i++) {
+                        String value = rs.getString(i);
+                        if (value != null) {
+                            entry.append(' ').append(columns.getColumnLabel(i)).append('=').append(value);
+                        }
+                    }
+                    entry.append(System.lineSeparator());
+                }
+            }
+        } catch (SQLException e) {
+            entry.append("plan: unavailable (").append(e.getMessage()).append(')').append(System.lineSeparator());
+        }
+    }
+}
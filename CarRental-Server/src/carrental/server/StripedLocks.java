@@ -0,0 +1,50 @@
+/*
+ * Car Rental Server
+ * Fixed set of locks shared out by key
+ */
+package carrental.server;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * StripedLocks - Server Module
+ * Serializes work per key (e.g. per car_id) without a lock object per key and
+ * without locking whole tables: each key maps to one of a fixed number of locks.
+ * Work on the same key always takes the same lock; work on different keys only
+ * waits for each other in the rare case that their keys share a stripe.
+ * ReentrantLock is used rather than synchronized so a virtual thread waiting on
+ * MySQL while it holds a stripe unmounts instead of pinning its carrier.
+ *
+ * @author Izaek Kisuule
+ */
+final class StripedLocks {
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    /**
+     * Creates the locks.
+     *
+     * @param stripes number of locks, rounded up to a power of two
+     */
+    StripedLocks(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes) * 2 - 1);
+        locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Returns the lock of a key.
+     *
+     * @param key the key, e.g. a car_id
+     * @return the lock shared by every key of the same stripe
+     */
+    ReentrantLock forKey(int key) {
+        // Spread consecutive ids over the stripes
+        int hash = key * 0x9E3779B9;
+        return locks[(hash ^ (hash >>> 16)) & mask];
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Car Rental Server
+ * Registry of the tables served by the protocol
+ */
+package carrental.server;
+
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * TableMetadata - Server Module
+ * Describes one protocol table: its MySQL table, primary key, columns with their
+ * types and nullability, and the messages of its responses. The SQL of every CRUD
+ * statement is generated once, when the registry is built, and CrudEngine runs
+ * all tables through the same code using this metadata.
+ *
+ * The columns are listed in protocol order: ADD sends them in this order, UPDATE
+ * sends the primary key followed by them, and FIND answers with them, except for
+ * password columns: those are written (hashed) but never read back to a client.
+ * A nullable column is written as NULL when its field is empty and read back as an
+ * empty field; the other columns keep the JDBC getter's value (0, 0.0 or "null").
+ *
+ * @author Izaek Kisuule
+ */
+public final class TableMetadata {
+
+    /** Column types; they decide how fields are bound, formatted and encoded. */
+    enum Type {
+        INT, DECIMAL, DATE, STRING
+    }
+
+    /**
+     * One column of a table.
+     */
+    static final class Column {
+        final String name;
+        final Type type;
+        final boolean nullable;
+        /** Plain-text values are stored as Authenticator hashes. */
+        final boolean password;
+
+        Column(String name, Type type, boolean nullable, boolean password) {
+            this.name = name;
+            this.type = type;
+            this.nullable = nullable;
+            this.password = password;
+        }
+    }
+
+    private static final Map<String, TableMetadata> tables = new LinkedHashMap<>();
+
+    static {
+        table("Cars", "Cars", "car_id", ',',
+                "Car added successfully", "Car updated successfully", "Car not found",
+                column("make", Type.STRING), column("model", Type.STRING), column("year", Type.INT),
+                column("license_plate", Type.STRING), column("rental_rate", Type.DECIMAL),
+                column("status", Type.STRING), column("color", Type.STRING), column("mileage", Type.INT));
+        table("Branches", "branches", "branch_id", ',',
+                "Branch added successfully", "Branch updated successfully", "Branch not found",
+                column("branch_name", Type.STRING), column("address", Type.STRING), column("city", Type.STRING),
+                nullable("phone_number", Type.STRING), nullable("email", Type.STRING),
+                nullable("manager_id", Type.INT), column("status", Type.STRING));
+        table("Insurance", "insurance", "insurance_id", ',',
+                "Insurance added successfully", "Insurance updated successfully", "Insurance not found",
+                column("car_id", Type.INT), column("policy_number", Type.STRING),
+                column("insurance_company", Type.STRING), nullable("coverage_amount", Type.DECIMAL),
+                column("premium_amount", Type.DECIMAL), column("start_date", Type.DATE),
+                column("end_date", Type.DATE), column("status", Type.STRING));
+        // Descriptions may contain commas: damages use '|' and clients send pipes in values as '¦'
+        table("Damages", "damages", "damage_id", '|',
+                "Damage record added successfully", "Damage updated successfully", "Damage not found",
+                column("rental_id", Type.INT), column("car_id", Type.INT), column("description", Type.STRING),
+                nullable("repair_cost", Type.DECIMAL), column("reported_date", Type.DATE),
+                column("status", Type.STRING));
+        table("EmployeeAssignments", "employeeassignments", "assignment_id", ',',
+                "Assignment added successfully", "Assignment updated successfully", "Assignment not found",
+                column("employee_id", Type.INT), column("branch_id", Type.INT),
+                column("assignment_type", Type.STRING), column("assignment_date", Type.DATE),
+                column("description", Type.STRING), column("status", Type.STRING));
+        table("VehicleMaintenance", "vehiclemaintenance", "maintenance_id", ',',
+                "Maintenance record added successfully", "Maintenance updated successfully",
+                "Maintenance record not found",
+                column("car_id", Type.INT), column("service_date", Type.DATE),
+                column("description", Type.STRING), column("cost", Type.DECIMAL));
+        table("Rentals", "rentals", "rental_id", ',',
+                "Rental added successfully", "Rental updated successfully", "Rental not found",
+                column("customer_id", Type.INT), column("car_id", Type.INT), column("employee_id", Type.INT),
+                column("start_date", Type.DATE), column("end_date", Type.DATE),
+                column("total_amount", Type.DECIMAL), column("status", Type.STRING));
+        table("Payments", "payments", "payment_id", ',',
+                "Payment added successfully", "Payment updated successfully", "Payment not found",
+                column("rental_id", Type.INT), column("amount", Type.DECIMAL), column("payment_date", Type.DATE),
+                column("payment_method", Type.STRING), column("payment_status", Type.STRING));
+        table("Customers", "customers", "customer_id", ',',
+                "Customer added successfully", "Customer updated successfully", "Customer not found",
+                column("first_name", Type.STRING), column("last_name", Type.STRING), column("email", Type.STRING),
+                nullable("phone_number", Type.STRING), nullable("address", Type.STRING),
+                nullable("license_number", Type.STRING));
+        table("Employees", "employees_login", "employee_id", ',',
+                "Employee added successfully", "Employee updated successfully", "Employee not found",
+                column("first_name", Type.STRING), column("last_name", Type.STRING), column("email", Type.STRING),
+                nullable("phone_number", Type.STRING), nullable("address", Type.STRING),
+                password("password_hash"));
+    }
+
+    private static Column column(String name, Type type) {
+        return new Column(name, type, false, false);
+    }
+
+    private static Column nullable(String name, Type type) {
+        return new Column(name, type, true, false);
+    }
+
+    private static Column password(String name) {
+        return new Column(name, Type.STRING, false, true);
+    }
+
+    private static void table(String name, String sqlTable, String key, char separator, String addedMessage,
+            String updatedMessage, String notFoundMessage, Column... columns) {
+        tables.put(name, new TableMetadata(name, sqlTable, key, separator, addedMessage, updatedMessage,
+                notFoundMessage, columns));
+    }
+
+    final String name;
+    final String key;
+    final Column[] columns;
+    /** The columns FIND and RECORD return: all but the password columns. */
+    final Column[] readColumns;
+    /** Field separator of ADD/UPDATE data and FIND responses. */
+    final char separator;
+    final String addedMessage;
+    final String updatedMessage;
+    final String notFoundMessage;
+
+    /** INSERT of all columns. */
+    final String insertSql;
+    /** UPDATE of all columns; the primary key is the last parameter. */
+    final String updateSql;
+    final String deleteSql;
+    /** SELECT of the readColumns for one primary key. */
+    final String selectSql;
+
+    private TableMetadata(String name, String sqlTable, String key, char separator, String addedMessage,
+            String updatedMessage, String notFoundMessage, Column[] columns) {
+        this.name = name;
+        this.key = key;
+        this.columns = columns;
+        this.separator = separator;
+        this.addedMessage = addedMessage;
+        this.updatedMessage = updatedMessage;
+        this.notFoundMessage = notFoundMessage;
+
+        StringJoiner names = new StringJoiner(", ");
+        StringJoiner readNames = new StringJoiner(", ");
+        StringJoiner parameters = new StringJoiner(",");
+        StringJoiner assignments = new StringJoiner(", ");
+        List<Column> readable = new ArrayList<>(columns.length);
+        for (Column column : columns) {
+            names.add(column.name);
+            parameters.add("?");
+            assignments.add(column.name + "=?");
+            if (!column.password) {
+                readNames.add(column.name);
+                readable.add(column);
+            }
+        }
+        this.readColumns = readable.toArray(new Column[0]);
+        this.insertSql = "INSERT INTO " + sqlTable + "(" + names + ") VALUES (" + parameters + ")";
+        this.updateSql = "UPDATE " + sqlTable + " SET " + assignments + " WHERE " + key + "=?";
+        this.deleteSql = "DELETE FROM " + sqlTable + " WHERE " + key + "=?";
+        this.selectSql = "SELECT " + readNames + " FROM " + sqlTable + " WHERE " + key + "=?";
+    }
+
+    /**
+     * Returns the metadata of a protocol table name.
+     *
+     * @param table the TABLE part of a request, e.g. "Cars"
+     * @return the metadata, or null if the table is unknown
+     */
+    static TableMetadata forTable(String table) {
+        return tables.get(table);
+    }
+
+    /**
+     * Returns the metadata of a protocol table name for code that reports errors as exceptions.
+     *
+     * @param table the TABLE part of a request, e.g. "Cars"
+     * @return the metadata
+     * @throws SQLException if the table is unknown
+     */
+    static TableMetadata require(String table) throws SQLException {
+        TableMetadata metadata = tables.get(table);
+        if (metadata == null) {
+            throw new SQLException("Unknown table: " + table);
+        }
+        return metadata;
+    }
+
+    /**
+     * @return the protocol names of all registered tables
+     */
+    static Set<String> names() {
+        return Collections.unmodifiableSet(tables.keySet());
+    }
+}